@@ -0,0 +1,48 @@
+package gg.essential.loader.stage2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic jars for the benchmarks, so they don't depend on any real mods or libraries being available.
+ */
+public class Fixtures {
+    /**
+     * Semi-compressible content, similar in size and compression ratio to typical class files.
+     */
+    public static byte[] classLikeContent(Random random) {
+        byte[] bytes = new byte[500 + random.nextInt(4000)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : "net/minecraft/Ljava/lang/Object;".charAt(i % 32));
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes a jar with the given entries (in iteration order), including explicit entries for all their parent
+     * directories, like a jar built by Gradle would have.
+     */
+    public static void writeJar(Path path, Map<String, byte[]> entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+            Set<String> dirs = new HashSet<>();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                String name = entry.getKey();
+                for (int slash = name.indexOf('/'); slash != -1; slash = name.indexOf('/', slash + 1)) {
+                    String dirName = name.substring(0, slash + 1);
+                    if (dirs.add(dirName)) {
+                        out.putNextEntry(new ZipEntry(dirName));
+                    }
+                }
+                out.putNextEntry(new ZipEntry(name));
+                out.write(entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package gg.essential.loader.stage2;
+
+import gg.essential.loader.stage2.util.Delete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+/**
+ * Pre-loads the Kotlin classes of a synthetic Essential jar into an empty LaunchWrapper resource cache, the way the
+ * LaunchWrapper {@link EssentialLoader} does for each bundled library on every boot.
+ *
+ * The cache starts out empty, so there are never any conflicts (which would require a real LaunchClassLoader).
+ * The lazy variant only registers the classes with a {@link LazyResourceCache}, the cost of reading the ones which are
+ * actually loaded is then paid later, on demand. The indexed variant additionally uses the {@link PreloadIndex} which
+ * is written into the processed jar, rather than going through all entries of the jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PreloadLibraryBenchmark {
+    @Param({"5000"})
+    public int kotlinClasses;
+
+    private Path dir;
+    private ZipFile jar;
+    private PreloadIndex index;
+    private EssentialLoader loader;
+    private Method preloadLibrary;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("preload-benchmark");
+        Path jarPath = dir.resolve("essential.jar");
+
+        Random random = new Random(42);
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < kotlinClasses; i++) {
+            entries.put("kotlin/pkg" + (i % 40) + "/Class" + i + ".class", Fixtures.classLikeContent(random));
+        }
+        for (int i = 0; i < kotlinClasses; i++) {
+            entries.put("gg/essential/pkg" + (i % 200) + "/Class" + i + ".class", Fixtures.classLikeContent(random));
+        }
+        Fixtures.writeJar(jarPath, entries);
+        try (FileSystem fileSystem = FileSystems.newFileSystem(jarPath, (ClassLoader) null)) {
+            PreloadIndex.scan(jarPath, Collections.singletonList("kotlin")).write(fileSystem);
+        }
+        jar = new ZipFile(jarPath.toFile());
+        index = PreloadIndex.read(jar);
+
+        loader = new EssentialLoader(dir, "1.8.9");
+        preloadLibrary = EssentialLoader.class.getDeclaredMethod("preloadLibrary", ZipFile.class, PreloadIndex.class, String.class, Map.class, Set.class);
+        preloadLibrary.setAccessible(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jar.close();
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> preloadKotlin() throws Exception {
+        Map<String, byte[]> resourceCache = new HashMap<>();
+        Set<String> negativeResourceCache = new HashSet<>();
+        preloadLibrary.invoke(loader, jar, null, "kotlin", resourceCache, negativeResourceCache);
+        return resourceCache;
+    }
+
+    @Benchmark
+    public Map<String, byte[]> preloadKotlinLazy() throws Exception {
+        Map<String, byte[]> resourceCache = new LazyResourceCache(new HashMap<>(), jar);
+        Set<String> negativeResourceCache = new HashSet<>();
+        preloadLibrary.invoke(loader, jar, null, "kotlin", resourceCache, negativeResourceCache);
+        return resourceCache;
+    }
+
+    @Benchmark
+    public Map<String, byte[]> preloadKotlinLazyIndexed() throws Exception {
+        Map<String, byte[]> resourceCache = new LazyResourceCache(new HashMap<>(), jar);
+        Set<String> negativeResourceCache = new HashSet<>();
+        preloadLibrary.invoke(loader, jar, index, "kotlin", resourceCache, negativeResourceCache);
+        return resourceCache;
+    }
+}
@@ -0,0 +1,57 @@
+package gg.essential.loader.stage2;
+
+import gg.essential.loader.stage2.util.Delete;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the most recent Essential jar in a directory which also contains plenty of unrelated files, like the
+ * `essential` folder of a long-used installation does.
+ *
+ * There is exactly one matching file, so {@link Utils#findMostRecentFile} has nothing to delete and the fixture
+ * stays the same across invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UtilsBenchmark {
+    private static final String BASE_NAME = "Essential (forge_1.12.2)";
+
+    @Param({"10", "1000"})
+    public int otherFiles;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("utils-benchmark");
+        for (int i = 0; i < otherFiles; i++) {
+            Files.createFile(dir.resolve("other-file-" + i + ".jar"));
+        }
+        Files.createFile(dir.resolve(BASE_NAME + ".3.jar"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public Pair<Path, Integer> findMostRecentFile() throws IOException {
+        return Utils.findMostRecentFile(dir, BASE_NAME, "jar");
+    }
+}
@@ -0,0 +1,90 @@
+package gg.essential.loader.stage2.diff;
+
+import gg.essential.loader.stage2.Fixtures;
+import gg.essential.loader.stage2.util.Delete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a synthetic diff, the shape of a typical Essential update (a few percent of classes changed, some removed and
+ * some added), to a synthetic jar roughly the shape of the Essential jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiffPatcherBenchmark {
+    @Param({"20000"})
+    public int entries;
+
+    @Param({"5"})
+    public int changedPercent;
+
+    private Path dir;
+    private Path source;
+    private Path diff;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("diff-benchmark");
+        source = dir.resolve("source.jar");
+        diff = dir.resolve("diff.zip");
+        output = dir.resolve("output.jar");
+
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            names.add("gg/essential/pkg" + random.nextInt(200) + "/sub" + random.nextInt(10) + "/Class" + i + ".class");
+        }
+        Collections.sort(names); // our own jars are sorted, see DiffPatcher.stripNonDeterminism
+
+        Map<String, byte[]> sourceEntries = new LinkedHashMap<>();
+        for (String name : names) {
+            sourceEntries.put(name, Fixtures.classLikeContent(random));
+        }
+        Fixtures.writeJar(source, sourceEntries);
+
+        Map<String, byte[]> diffEntries = new LinkedHashMap<>();
+        int changed = entries * changedPercent / 100;
+        for (int i = 0; i < changed; i++) {
+            diffEntries.put("~/" + names.get(random.nextInt(names.size())), Fixtures.classLikeContent(random));
+        }
+        for (int i = 0; i < changed / 4; i++) {
+            diffEntries.put("-/" + names.get(random.nextInt(names.size())), new byte[0]);
+        }
+        for (int i = 0; i < changed / 4; i++) {
+            diffEntries.put("+/gg/essential/added/Class" + i + ".class", Fixtures.classLikeContent(random));
+        }
+        Fixtures.writeJar(diff, diffEntries);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public Path apply() throws IOException {
+        DiffPatcher.apply(source, diff, output);
+        return output;
+    }
+}
@@ -0,0 +1,104 @@
+package gg.essential.loader.stage2.diff;
+
+import gg.essential.loader.stage2.util.Delete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares the inflate/deflate based {@link DiffPatcher#stripNonDeterminismViaZipStreams(Path)} with the raw copying
+ * {@link DiffPatcher#stripNonDeterminism(Path)} on a synthetic jar roughly the shape of the Essential jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StripNonDeterminismBenchmark {
+    @Param({"20000"})
+    public int entries;
+
+    private Path dir;
+    private Path source;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("strip-benchmark");
+        source = dir.resolve("source.jar");
+        target = dir.resolve("target.jar");
+
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            names.add("gg/essential/pkg" + random.nextInt(200) + "/sub" + random.nextInt(10) + "/Class" + i + ".class");
+        }
+        Collections.shuffle(names, random); // so sorting actually has something to do
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+            Set<String> dirs = new HashSet<>();
+            for (String name : names) {
+                for (int slash = name.indexOf('/'); slash != -1; slash = name.indexOf('/', slash + 1)) {
+                    String dirName = name.substring(0, slash + 1);
+                    if (dirs.add(dirName)) {
+                        out.putNextEntry(new ZipEntry(dirName));
+                    }
+                }
+                out.putNextEntry(new ZipEntry(name));
+                out.write(classLikeContent(random));
+            }
+        }
+    }
+
+    /**
+     * Semi-compressible content, similar in size and compression ratio to typical class files.
+     */
+    private static byte[] classLikeContent(Random random) {
+        byte[] bytes = new byte[500 + random.nextInt(4000)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : "net/minecraft/Ljava/lang/Object;".charAt(i % 32));
+        }
+        return bytes;
+    }
+
+    @Setup(Level.Invocation)
+    public void copySource() throws IOException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public Path zipStreams() throws IOException {
+        DiffPatcher.stripNonDeterminismViaZipStreams(target);
+        return target;
+    }
+
+    @Benchmark
+    public Path rawCopy() throws IOException {
+        DiffPatcher.stripNonDeterminism(target);
+        return target;
+    }
+}
@@ -0,0 +1,91 @@
+package gg.essential.loader.stage2.download;
+
+import gg.essential.loader.stage2.util.Checksum;
+import gg.essential.loader.stage2.util.Delete;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Compares the original 1KiB copy loop of `attemptDownload` with {@link Transfer}, reading from a file-backed
+ * {@link URLConnection} so the network does not dominate the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferBenchmark {
+    @Param({"30"})
+    public int sizeMiB;
+
+    private Path dir;
+    private URL source;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("transfer-benchmark");
+        Path sourceFile = dir.resolve("source.jar");
+        byte[] bytes = new byte[sizeMiB * 1024 * 1024];
+        new Random(42).nextBytes(bytes);
+        Files.write(sourceFile, bytes);
+        source = sourceFile.toUri().toURL();
+        target = dir.resolve("target.jar");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public String legacyLoop(Blackhole blackhole) throws IOException {
+        URLConnection connection = source.openConnection();
+        MessageDigest digest = Checksum.newDigest();
+        try (InputStream in = connection.getInputStream(); OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[1024];
+            int totalRead = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                totalRead += read;
+                out.write(buffer, 0, read);
+                digest.update(buffer, 0, read);
+                blackhole.consume(totalRead); // ui.setDownloaded
+            }
+        }
+        return Checksum.toChecksum(digest);
+    }
+
+    @Benchmark
+    public String transfer(Blackhole blackhole) throws IOException {
+        URLConnection connection = source.openConnection();
+        MessageDigest digest = Checksum.newDigest();
+        try (InputStream in = connection.getInputStream(); FileChannel out = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            Transfer.copy(in, out, connection.getContentLengthLong(), digest, blackhole::consume);
+        }
+        return Checksum.toChecksum(digest);
+    }
+}
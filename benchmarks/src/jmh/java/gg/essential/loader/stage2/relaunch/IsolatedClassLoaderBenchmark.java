@@ -0,0 +1,114 @@
+package gg.essential.loader.stage2.relaunch;
+
+import gg.essential.loader.stage2.Fixtures;
+import gg.essential.loader.stage2.util.Delete;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads classes from a synthetic jar through an {@link IsolatedClassLoader}, both when they first need to be defined
+ * (as happens for every class after a relaunch) and once they have been (as happens for every further reference to
+ * them), mixed with the JRE and logging classes which are delegated to the parent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IsolatedClassLoaderBenchmark {
+    private static final String[] EXCLUDED_CLASSES = {
+        "java.lang.Object",
+        "java.lang.String",
+        "java.util.List",
+        "org.apache.logging.log4j.LogManager",
+    };
+
+    @Param({"2000"})
+    public int classes;
+
+    private Path dir;
+    private URL[] urls;
+    private List<String> names;
+    private IsolatedClassLoader coldLoader;
+    private IsolatedClassLoader warmLoader;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("class-loader-benchmark");
+        Path jar = dir.resolve("classes.jar");
+
+        names = new ArrayList<>();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < classes; i++) {
+            String internalName = "synthetic/pkg" + (i % 50) + "/Class" + i;
+            entries.put(internalName + ".class", emptyClass(internalName));
+            names.add(internalName.replace('/', '.'));
+        }
+        Fixtures.writeJar(jar, entries);
+        urls = new URL[]{ jar.toUri().toURL() };
+
+        warmLoader = new IsolatedClassLoader(urls, getClass().getClassLoader());
+        for (String name : names) {
+            warmLoader.loadClass(name);
+        }
+    }
+
+    private static byte[] emptyClass(String internalName) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void newColdLoader() {
+        coldLoader = new IsolatedClassLoader(urls, getClass().getClassLoader());
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeColdLoader() throws IOException {
+        coldLoader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        warmLoader.close();
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public void defineClasses(Blackhole blackhole) throws ClassNotFoundException {
+        for (String name : names) {
+            blackhole.consume(coldLoader.loadClass(name));
+        }
+    }
+
+    @Benchmark
+    public void loadDefinedClasses(Blackhole blackhole) throws ClassNotFoundException {
+        for (String name : names) {
+            blackhole.consume(warmLoader.loadClass(name));
+        }
+        for (String name : EXCLUDED_CLASSES) {
+            blackhole.consume(warmLoader.loadClass(name));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package gg.essential.loader.stage2.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the digest algorithms supported by {@link Checksum} on an in-memory buffer, fed in the same 8KiB chunks as
+ * a download, so we can tell whether switching algorithms costs any CPU time on a given machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChecksumBenchmark {
+    @Param({"30"})
+    public int sizeMiB;
+
+    @Param({"", "sha256:", "sha512:"})
+    public String algorithm;
+
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        bytes = new byte[sizeMiB * 1024 * 1024];
+        new Random(42).nextBytes(bytes);
+    }
+
+    @Benchmark
+    public String digest() {
+        MessageDigest digest = Checksum.newDigest(algorithm);
+        for (int offset = 0; offset < bytes.length; offset += 8192) {
+            digest.update(bytes, offset, Math.min(8192, bytes.length - offset));
+        }
+        return Checksum.toChecksum(digest);
+    }
+}
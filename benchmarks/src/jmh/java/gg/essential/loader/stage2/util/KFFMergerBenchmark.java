@@ -0,0 +1,110 @@
+package gg.essential.loader.stage2.util;
+
+import cpw.mods.jarhandling.SecureJar;
+import gg.essential.loader.stage2.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges our (synthetic) Kotlin stdlib into a synthetic KotlinForForge jar with an outdated Kotlin, and checks an
+ * unrelated mod jar, which is what happens for every other mod.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KFFMergerBenchmark {
+    @Param({"2000"})
+    public int kotlinClasses;
+
+    private Path dir;
+    private KFFMerger merger;
+    private SecureJar kffJar;
+    private SecureJar otherJar;
+    private SecureJar mergedJar;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("kff-benchmark");
+        Random random = new Random(42);
+
+        // Our slim jars do not contain KotlinVersion, so the one in the KFF jar is always considered outdated
+        Path ourKotlin = dir.resolve("kotlin-stdlib-1.9.0.jar");
+        Fixtures.writeJar(ourKotlin, kotlinEntries(random));
+        merger = new KFFMerger();
+        merger.addKotlinJar(ourKotlin, SecureJar.from(ourKotlin));
+
+        Path kff = dir.resolve("kotlinforforge-3.12.0.jar");
+        Map<String, byte[]> kffEntries = new LinkedHashMap<>();
+        kffEntries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+        kffEntries.putAll(kotlinEntries(random));
+        for (int i = 0; i < 50; i++) {
+            kffEntries.put("thedarkcolour/kotlinforforge/Class" + i + ".class", Fixtures.classLikeContent(random));
+        }
+        Fixtures.writeJar(kff, kffEntries);
+        kffJar = SecureJar.from(kff);
+
+        Path other = dir.resolve("othermod-1.0.0.jar");
+        Map<String, byte[]> otherEntries = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            otherEntries.put("com/example/othermod/Class" + i + ".class", Fixtures.classLikeContent(random));
+        }
+        Fixtures.writeJar(other, otherEntries);
+        otherJar = SecureJar.from(other);
+    }
+
+    private Map<String, byte[]> kotlinEntries(Random random) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < kotlinClasses; i++) {
+            String pkg = i % 4 == 0 ? "kotlin" : "kotlin/pkg" + (i % 20);
+            entries.put(pkg + "/Class" + i + ".class", Fixtures.classLikeContent(random));
+        }
+        return entries;
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteMergedJar() throws IOException {
+        if (mergedJar != null && mergedJar != kffJar) {
+            Files.deleteIfExists(mergedJar.getPrimaryPath());
+        }
+        mergedJar = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Delete.recursively(dir);
+    }
+
+    // Every merge opens a new file system which is never closed (same as in production, where the jar is used until
+    // the game exits), so we only run a bounded number of them.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 30)
+    public SecureJar mergeOutdated() {
+        return mergedJar = merger.maybeMergeInto(kffJar);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public SecureJar skipUnrelated() {
+        return merger.maybeMergeInto(otherJar);
+    }
+}
@@ -0,0 +1,78 @@
+package gg.essential.loader.stage2.util;
+
+import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.modlauncher.api.NamedPath;
+import gg.essential.loader.stage2.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Adds synthetic mod jars one by one to a {@link SortedJarOrPathList}, the way ModLauncher fills a layer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortedJarOrPathListBenchmark {
+    @Param({"50", "200"})
+    public int jars;
+
+    private Path dir;
+    private List<PathOrJar> elements;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("sorted-list-benchmark");
+        Random random = new Random(42);
+        elements = new ArrayList<>();
+        for (int i = 0; i < jars; i++) {
+            Path jar = dir.resolve("lib" + i + "-1." + random.nextInt(20) + "." + i + ".jar");
+            Fixtures.writeJar(jar, Collections.singletonMap("lib" + i + "/Main.class", Fixtures.classLikeContent(random)));
+            elements.add(new PathOrJar(null, SecureJar.from(jar)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Delete.recursively(dir);
+    }
+
+    @Benchmark
+    public List<Object> add() {
+        SortedJarOrPathList list = new SortedJarOrPathList(Function.identity());
+        for (PathOrJar element : elements) {
+            list.add(element);
+        }
+        return list;
+    }
+
+    /**
+     * Same shape as ModLauncher's private `ModuleLayerHandler.PathOrJar` record, which is all the list relies on.
+     */
+    private static class PathOrJar {
+        private final NamedPath path;
+        private final SecureJar jar;
+
+        private PathOrJar(NamedPath path, SecureJar jar) {
+            this.path = path;
+            this.jar = jar;
+        }
+    }
+}
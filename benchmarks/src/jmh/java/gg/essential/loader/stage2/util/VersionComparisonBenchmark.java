@@ -0,0 +1,43 @@
+package gg.essential.loader.stage2.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares versions of the shapes we encounter when picking the most recent of multiple jars of the same mod.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VersionComparisonBenchmark {
+    @Param({
+        "1.2.3|1.2.4",
+        "1.0.0-rc.1|1.0.0.1",
+        "1.3.0.2+gabcdef|1.3.0.2+g123456",
+        "1.9.0|1.10.0-SNAPSHOT",
+    })
+    public String versions;
+
+    private String a;
+    private String b;
+
+    @Setup
+    public void setup() {
+        String[] parts = versions.split("\\|");
+        a = parts[0];
+        b = parts[1];
+    }
+
+    @Benchmark
+    public int compareVersions() {
+        return VersionComparison.compareVersions(a, b);
+    }
+}
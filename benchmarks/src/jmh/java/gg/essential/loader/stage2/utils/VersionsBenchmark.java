@@ -0,0 +1,27 @@
+package gg.essential.loader.stage2.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses library versions the way we do when deciding whether the Mixin or ASM on the class path is outdated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VersionsBenchmark {
+    @Param({"0.7.11", "0.8.5", "5.2"})
+    public String version;
+
+    @Benchmark
+    public int[] parseVersion() {
+        return Versions.parseVersion("benchmark", version);
+    }
+}
@@ -1,17 +1,26 @@
 package gg.essential.loader.fixtures;
 
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import gg.essential.loader.util.Copy;
 import gg.essential.loader.util.Delete;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -40,6 +49,17 @@ public abstract class BaseInstallation implements AutoCloseable {
 
     private final HttpServer server;
     private final String downloadApiUrl;
+    public boolean rangeRequestsSupported = true;
+    public final AtomicInteger rangeRequests = new AtomicInteger();
+    /** Number of conditional requests which were answered with `304 Not Modified`. */
+    public final AtomicInteger notModifiedResponses = new AtomicInteger();
+    /** Called with the `Range` header of every range request, before it is answered. */
+    public volatile Consumer<String> rangeRequestListener = null;
+    /** The `Range` header (or {@code null} if there was none) of every request for a jar, in order. */
+    public final List<String> jarRequestRanges = new CopyOnWriteArrayList<>();
+    /** Number of upcoming jar responses which are cut off after {@link #dropConnectionAfter} bytes of their body. */
+    public final AtomicInteger dropConnections = new AtomicInteger();
+    public volatile int dropConnectionAfter = 100;
 
     public BaseInstallation() throws IOException {
         System.out.println("Installation: " + gameDir);
@@ -49,14 +69,64 @@ public abstract class BaseInstallation implements AutoCloseable {
         server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
         server.createContext("/", httpExchange -> {
             Path path = apiDir.resolve(httpExchange.getRequestURI().getPath().substring(1));
+            if (path.getParent().equals(apiDir.resolve("v1/versions/platforms"))) {
+                byte[] bytes = batchedVersions(path.getFileName().toString(), httpExchange.getRequestURI().getRawQuery());
+                if (checkNotModified(httpExchange, bytes)) {
+                    return;
+                }
+                httpExchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = httpExchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+                return;
+            }
             if (!Files.isRegularFile(path)) {
                 path = path.resolveSibling(path.getFileName().toString() + ".json");
             }
             if (Files.exists(path)) {
                 byte[] bytes = Files.readAllBytes(path);
-                httpExchange.sendResponseHeaders(200, bytes.length);
+                int from = 0;
+                int to = bytes.length - 1;
+                String range = httpExchange.getRequestHeaders().getFirst("Range");
+                boolean isJar = path.getFileName().toString().endsWith(".jar");
+                if (isJar) {
+                    jarRequestRanges.add(range);
+                }
+                if (rangeRequestsSupported && range != null && range.startsWith("bytes=")) {
+                    String[] parts = range.substring("bytes=".length()).split("-", -1);
+                    from = Integer.parseInt(parts[0]);
+                    if (!parts[1].isEmpty()) {
+                        to = Math.min(to, Integer.parseInt(parts[1]));
+                    }
+                    if (from > to) {
+                        httpExchange.getResponseHeaders().set("Content-Range", "bytes */" + bytes.length);
+                        httpExchange.sendResponseHeaders(416, -1);
+                        return;
+                    }
+                    rangeRequests.incrementAndGet();
+                    Consumer<String> listener = rangeRequestListener;
+                    if (listener != null) {
+                        listener.accept(range);
+                    }
+                    httpExchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + bytes.length);
+                    httpExchange.sendResponseHeaders(206, to - from + 1);
+                } else {
+                    if (checkNotModified(httpExchange, bytes)) {
+                        return;
+                    }
+                    httpExchange.sendResponseHeaders(200, bytes.length);
+                }
+                int drop = dropConnectionAfter;
+                if (isJar && drop < to - from + 1 && dropConnections.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    OutputStream out = httpExchange.getResponseBody();
+                    out.write(bytes, from, drop);
+                    out.flush();
+                    // Closing the exchange would leave the connection open, waiting for the rest of the body, only
+                    // failing the handler makes the server close it
+                    throw new IOException("Dropping connection after " + drop + " bytes");
+                }
                 try (OutputStream out = httpExchange.getResponseBody()) {
-                    out.write(bytes);
+                    out.write(bytes, from, to - from + 1);
                 }
             } else {
                 httpExchange.sendResponseHeaders(404, 0);
@@ -69,8 +139,81 @@ public abstract class BaseInstallation implements AutoCloseable {
         downloadApiUrl = "http://" + address.getHostString() + ":" + address.getPort();
     }
 
+    /**
+     * Sets the `ETag` of the given response and, if the client already has that version, answers with
+     * `304 Not Modified`.
+     *
+     * @return whether the response has been sent
+     */
+    private boolean checkNotModified(HttpExchange httpExchange, byte[] bytes) throws IOException {
+        String etag = "\"" + Hashing.sha256().hashBytes(bytes) + "\"";
+        httpExchange.getResponseHeaders().set("ETag", etag);
+        if (!etag.equals(httpExchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            return false;
+        }
+        notModifiedResponses.incrementAndGet();
+        httpExchange.sendResponseHeaders(304, -1);
+        httpExchange.close();
+        return true;
+    }
+
     protected abstract String getPlatformVersion();
 
+    /**
+     * Returns a url at which the given file within {@link #apiDir} is served over http (rather than the `file:` urls
+     * which the download endpoints point to by default).
+     */
+    public String httpUrl(Path file) {
+        return downloadApiUrl + "/" + apiDir.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Assembles the response of the batched version endpoint from the individual version/download endpoints, so tests
+     * which modify those will automatically be reflected in the batched response as well.
+     * Mods for which the individual endpoint does not contain a json object are omitted, so the loader will fall back
+     * to querying those individually (and run into the same errors as it would have if batching was disabled).
+     */
+    private byte[] batchedVersions(String platform, String query) throws IOException {
+        StringBuilder json = new StringBuilder("{ \"versions\": [");
+        boolean first = true;
+        for (String param : query == null ? new String[0] : query.split("&")) {
+            if (!param.startsWith("mod=")) {
+                continue;
+            }
+            String value = URLDecoder.decode(param.substring("mod=".length()), "UTF-8");
+            String mod = value.substring(0, value.lastIndexOf('@'));
+            String branch = value.substring(value.lastIndexOf('@') + 1);
+
+            Path versionDir = apiDir.resolve("v1/" + mod + "/versions/" + branch + "/platforms");
+            String latest = readJsonObject(versionDir.resolve(platform + ".json"));
+            if (latest == null) {
+                continue;
+            }
+            String download = readJsonObject(versionDir.resolve(platform).resolve("download.json"));
+
+            json.append(first ? "" : ",").append("{ \"mod\": \"").append(mod).append("\", \"branch\": \"").append(branch)
+                .append("\", \"latest\": ").append(latest);
+            if (download != null) {
+                json.append(", \"download\": ").append(download);
+            }
+            json.append(" }");
+            first = false;
+        }
+        json.append("] }");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readJsonObject(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        if (!content.startsWith("{") || !content.endsWith("}")) {
+            return null;
+        }
+        return content;
+    }
+
     public void setup() throws IOException {
         setupDownloadsApi();
     }
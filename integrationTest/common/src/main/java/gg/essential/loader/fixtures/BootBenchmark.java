@@ -0,0 +1,124 @@
+package gg.essential.loader.fixtures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeatedly measures how long a full launch (stage0 through stage2 and Essential) takes in a given scenario, and
+ * appends the percentiles to a plain text report (`build/reports/bootBenchmark/report.txt`), which the `bootBenchmark`
+ * Gradle task prints once all benchmarks have finished.
+ *
+ * Besides the total wall time of the launch, the report also contains the median of each boot phase recorded by the
+ * loader itself (see `BootTimings` in stage2), so regressions can be attributed without having to re-run anything.
+ *
+ * The number of iterations can be configured via the `essential.bootBenchmark.warmup` and
+ * `essential.bootBenchmark.iterations` system properties.
+ */
+public class BootBenchmark {
+    private static final int WARMUP = Integer.getInteger("essential.bootBenchmark.warmup", 1);
+    private static final int ITERATIONS = Integer.getInteger("essential.bootBenchmark.iterations", 10);
+    private static final Path REPORT_FILE = Paths.get("build", "reports", "bootBenchmark", "report.txt");
+    private static final String TIMING_PREFIX = "essential.loader.timing.";
+
+    private final String platform;
+    private final String scenario;
+    private final List<Long> totals = new ArrayList<>();
+    private final Map<String, List<Long>> phases = new TreeMap<>();
+    private boolean measuring;
+
+    private BootBenchmark(String platform, String scenario) {
+        this.platform = platform;
+        this.scenario = scenario;
+    }
+
+    /**
+     * Runs the given iteration {@link #WARMUP} plus {@link #ITERATIONS} times, and reports the measurements of all but
+     * the warmup iterations.
+     * Each iteration must call {@link #launch(IsolatedLaunch)} exactly once, anything else it does is not measured.
+     */
+    public static void run(String platform, String scenario, Iteration iteration) throws Exception {
+        BootBenchmark benchmark = new BootBenchmark(platform, scenario);
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            benchmark.measuring = i >= WARMUP;
+            iteration.run(benchmark);
+        }
+        benchmark.report();
+    }
+
+    /**
+     * Runs the given launch, measuring how long it takes.
+     */
+    public void launch(IsolatedLaunch launch) throws Exception {
+        long start = System.nanoTime();
+        launch.launch();
+        long total = System.nanoTime() - start;
+
+        if (!measuring) {
+            return;
+        }
+        totals.add(total);
+        for (String key : launch.getPropertyNames()) {
+            if (key.startsWith(TIMING_PREFIX)) {
+                phases.computeIfAbsent(key.substring(TIMING_PREFIX.length()), __ -> new ArrayList<>())
+                    .add(phaseTotal(launch.getProperty(key)));
+            }
+        }
+    }
+
+    private static long phaseTotal(String value) {
+        long total = 0;
+        for (String run : value.split(";")) {
+            String[] parts = run.split(",");
+            total += Long.parseLong(parts[1]) - Long.parseLong(parts[0]);
+        }
+        return total;
+    }
+
+    private void report() throws IOException {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-14s %-14s n=%-3d p50=%7.1fms p90=%7.1fms p99=%7.1fms min=%7.1fms max=%7.1fms%n",
+            platform, scenario, totals.size(),
+            millis(percentile(totals, 50)), millis(percentile(totals, 90)), millis(percentile(totals, 99)),
+            millis(percentile(totals, 0)), millis(percentile(totals, 100))));
+        for (Map.Entry<String, List<Long>> entry : phases.entrySet()) {
+            report.append(String.format("    %-40s p50=%7.1fms p90=%7.1fms%n",
+                entry.getKey(), millis(percentile(entry.getValue(), 50)), millis(percentile(entry.getValue(), 90))));
+        }
+        System.out.print(report);
+
+        Files.createDirectories(REPORT_FILE.getParent());
+        Files.write(REPORT_FILE, report.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Nearest-rank percentile, so every reported number is one which was actually measured.
+     */
+    private static long percentile(List<Long> samples, int percentile) {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public interface Iteration {
+        void run(BootBenchmark benchmark) throws Exception;
+    }
+}
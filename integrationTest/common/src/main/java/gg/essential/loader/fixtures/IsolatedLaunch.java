@@ -35,6 +35,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 import java.util.stream.Stream;
@@ -68,6 +69,10 @@ public class IsolatedLaunch {
         return this.systemProperties.getProperty(key);
     }
 
+    public Set<String> getPropertyNames() {
+        return this.systemProperties.stringPropertyNames();
+    }
+
     public void addToClasspath(URL... urls) {
         this.classpath.addAll(Arrays.asList(urls));
     }
@@ -0,0 +1,50 @@
+package gg.essential.loader;
+
+import gg.essential.loader.fixtures.BootBenchmark;
+import gg.essential.loader.fixtures.Installation;
+import gg.essential.loader.fixtures.IsolatedLaunch;
+import gg.essential.loader.util.Delete;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boot time benchmarks, run via the `bootBenchmark` task rather than as part of the regular integration tests.
+ * See {@link BootBenchmark}.
+ */
+public class BootBenchmarks {
+    private static final String PLATFORM = "fabric_1.14.4";
+
+    @Test
+    public void coldInstall(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        BootBenchmark.run(PLATFORM, "coldInstall", benchmark -> {
+            if (Files.exists(installation.essentialDir)) {
+                Delete.recursively(installation.essentialDir);
+            }
+
+            IsolatedLaunch isolatedLaunch = installation.newLaunchFabric();
+            benchmark.launch(isolatedLaunch);
+
+            installation.assertModLaunched(isolatedLaunch);
+            assertTrue(isolatedLaunch.isEssentialLoaded(), "Essential loaded");
+        });
+    }
+
+    @Test
+    public void warmBoot(Installation installation) throws Exception {
+        installation.addExampleMod();
+        installation.launchFabric();
+
+        BootBenchmark.run(PLATFORM, "warmBoot", benchmark -> {
+            IsolatedLaunch isolatedLaunch = installation.newLaunchFabric();
+            benchmark.launch(isolatedLaunch);
+
+            installation.assertModLaunched(isolatedLaunch);
+            assertTrue(isolatedLaunch.isEssentialLoaded(), "Essential loaded");
+        });
+    }
+}
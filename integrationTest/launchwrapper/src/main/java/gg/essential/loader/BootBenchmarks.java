@@ -0,0 +1,130 @@
+package gg.essential.loader;
+
+import gg.essential.loader.fixtures.BootBenchmark;
+import gg.essential.loader.fixtures.Installation;
+import gg.essential.loader.fixtures.IsolatedLaunch;
+import gg.essential.loader.util.Delete;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boot time benchmarks, run via the `bootBenchmark` task rather than as part of the regular integration tests.
+ * See {@link BootBenchmark}.
+ */
+public class BootBenchmarks {
+    @Test
+    public void coldInstall10808(Installation installation) throws Exception {
+        coldInstall(installation, "forge_1.8.8", Installation::newLaunchFML10808);
+    }
+
+    @Test
+    public void coldInstall11202(Installation installation) throws Exception {
+        coldInstall(installation, "forge_1.12.2", Installation::newLaunchFML11202);
+    }
+
+    private void coldInstall(Installation installation, String platform, LaunchFactory launchFactory) throws Exception {
+        installation.addExampleMod();
+
+        BootBenchmark.run(platform, "coldInstall", benchmark -> {
+            if (Files.exists(installation.essentialDir)) {
+                Delete.recursively(installation.essentialDir);
+            }
+
+            IsolatedLaunch isolatedLaunch = launchFactory.newLaunch(installation);
+            benchmark.launch(isolatedLaunch);
+
+            assertEssentialLaunched(installation, isolatedLaunch);
+        });
+    }
+
+    @Test
+    public void warmBoot10808(Installation installation) throws Exception {
+        warmBoot(installation, "forge_1.8.8", Installation::newLaunchFML10808);
+    }
+
+    @Test
+    public void warmBoot11202(Installation installation) throws Exception {
+        warmBoot(installation, "forge_1.12.2", Installation::newLaunchFML11202);
+    }
+
+    private void warmBoot(Installation installation, String platform, LaunchFactory launchFactory) throws Exception {
+        installation.addExampleMod();
+        launchFactory.newLaunch(installation).launch();
+
+        BootBenchmark.run(platform, "warmBoot", benchmark -> {
+            IsolatedLaunch isolatedLaunch = launchFactory.newLaunch(installation);
+            benchmark.launch(isolatedLaunch);
+
+            assertEssentialLaunched(installation, isolatedLaunch);
+        });
+    }
+
+    // The diff fixture only exists for the 1.8.8 platform
+    @Test
+    public void diffUpdate10808(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        byte[] stableMeta = Files.readAllBytes(installation.stage3Meta);
+        byte[] dummyMeta = Files.readAllBytes(installation.stage3DummyMeta);
+        Path dummyMetaDownload = installation.stage3DummyMetaDownload;
+        Path dummyMetaDownloadBackup = dummyMetaDownload.resolveSibling("download.json.bak");
+
+        BootBenchmark.run("forge_1.8.8", "diffUpdate", benchmark -> {
+            // Install the stable version
+            if (Files.exists(installation.essentialDir)) {
+                Delete.recursively(installation.essentialDir);
+            }
+            Files.write(installation.stage3Meta, stableMeta);
+            installation.newLaunchFML10808().launch();
+
+            // and make the dummy one available, but only via diff
+            Files.write(installation.stage3Meta, dummyMeta);
+            Files.move(dummyMetaDownload, dummyMetaDownloadBackup);
+            try {
+                IsolatedLaunch isolatedLaunch = installation.newLaunchFML10808();
+                benchmark.launch(isolatedLaunch);
+
+                installation.assertModLaunched(isolatedLaunch);
+            } finally {
+                Files.move(dummyMetaDownloadBackup, dummyMetaDownload);
+            }
+        });
+    }
+
+    @Test
+    public void relaunch10808(Installation installation) throws Exception {
+        relaunch(installation, "forge_1.8.8", Installation::newLaunchFML10808);
+    }
+
+    @Test
+    public void relaunch11202(Installation installation) throws Exception {
+        relaunch(installation, "forge_1.12.2", Installation::newLaunchFML11202);
+    }
+
+    private void relaunch(Installation installation, String platform, LaunchFactory launchFactory) throws Exception {
+        installation.addExampleMod();
+        installation.addOldKotlinMod(); // to trigger the relaunch
+        launchFactory.newLaunch(installation).launch();
+
+        BootBenchmark.run(platform, "relaunch", benchmark -> {
+            IsolatedLaunch isolatedLaunch = launchFactory.newLaunch(installation);
+            benchmark.launch(isolatedLaunch);
+
+            assertEssentialLaunched(installation, isolatedLaunch);
+            assertTrue(isolatedLaunch.getModLoadState("relaunched"), "Re-launched");
+        });
+    }
+
+    private static void assertEssentialLaunched(Installation installation, IsolatedLaunch isolatedLaunch) throws Exception {
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(isolatedLaunch.isEssentialLoaded(), "Essential loaded");
+    }
+
+    private interface LaunchFactory {
+        IsolatedLaunch newLaunch(Installation installation) throws Exception;
+    }
+}
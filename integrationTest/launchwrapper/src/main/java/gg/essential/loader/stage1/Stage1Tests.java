@@ -10,6 +10,7 @@ import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class Stage1Tests {
@@ -30,6 +31,19 @@ public class Stage1Tests {
         assertTrue(isolatedLaunch.getClass("gg.essential.loader.stage2.EssentialLoader").getDeclaredField("initialized").getBoolean(null));
     }
 
+    @Test
+    public void testChecksumIsCached(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertEquals("1", isolatedLaunch.getProperty("essential.loader.checksumCache.hits"));
+        assertNull(isolatedLaunch.getProperty("essential.loader.checksumCache.misses"));
+    }
+
     @Test
     public void testUnsupportedVersionOnFirstLaunch(Installation installation) throws Exception {
         testUnsupportedVersion(installation, false);
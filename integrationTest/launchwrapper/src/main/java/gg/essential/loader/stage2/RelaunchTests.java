@@ -52,6 +52,24 @@ public class RelaunchTests {
         assertTrue(isolatedLaunch.isEssentialLoaded(), "Essential loaded");
     }
 
+    @Test
+    public void testRelaunchWithTweakerModsAddedToClasspathLater(Installation installation) throws Exception {
+        // Both mods are tweakers in the mods folder, so they are not on the classpath the re-launch class loader is
+        // constructed with, they only get added to it later, when FML finds them.
+        installation.addExampleMod();
+        installation.addExample2Mod();
+        installation.addOldKotlinMod(); // to trigger the relaunch
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(isolatedLaunch.isEssentialLoaded(), "Essential loaded");
+        assertTrue(isolatedLaunch.getModLoadState("relaunched"), "Re-launched");
+        assertTrue(isolatedLaunch.getModLoadState("tweaker"), "Example Tweaker ran");
+        assertTrue(isolatedLaunch.getMod2LoadState("tweaker"), "Example Mod 2 Tweaker ran");
+        assertTrue(isolatedLaunch.getMod2LoadState("mod"), "Example Mod 2 ran");
+    }
+
     @Test
     public void testRelaunchDueToOldMixin(Installation installation) throws Exception {
         installation.addExampleMod("stable-with-mixin-07");
@@ -11,6 +11,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static gg.essential.loader.fixtures.BaseInstallation.withBranch;
 import static gg.essential.loader.stage1.Stage1BundledTests.props;
@@ -18,6 +20,7 @@ import static gg.essential.loader.stage1.Stage1BundledTests.readProps;
 import static gg.essential.loader.stage1.Stage1BundledTests.writeProps;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class Stage2BundledTests {
@@ -56,6 +59,65 @@ public class Stage2BundledTests {
         assertEquals(props("overridePinnedVersion=2"), readProps(installation.stage2ConfigFile));
     }
 
+    @Test
+    public void testPromptUpdatePrefetched(Installation installation) throws Exception {
+        installation.addExampleMod("bundled-1");
+
+        Path stage3Meta2 = withBranch(installation.stage3Meta, "2");
+        Files.copy(stage3Meta2, installation.stage3Meta, REPLACE_EXISTING);
+
+        IsolatedLaunch firstLaunch = installation.launchFML();
+        assertEquals("1", firstLaunch.getProperty("essential.version"));
+        assertEquals(props("pendingUpdateVersion=2"), readProps(installation.stage2ConfigFile));
+
+        // Essential prefetches the update while the game is running
+        CompletableFuture<?> prefetch = (CompletableFuture<?>) firstLaunch.getClass("gg.essential.loader.stage2.EssentialLoaderBase")
+            .getMethod("prefetchPendingUpdate", String.class)
+            .invoke(null, "essential");
+        assertEquals(true, prefetch.get(30, TimeUnit.SECONDS));
+        assertTrue(Files.exists(installation.essentialDir.resolve("Essential (forge_1.8.8).prefetched")));
+
+        writeProps(installation.stage2ConfigFile, props("pendingUpdateVersion=2", "pendingUpdateResolution=true"));
+
+        // so the next boot can install it without having to download anything
+        Files.delete(stage3Meta2.resolveSibling("forge_1-8-8").resolve("download.json"));
+
+        IsolatedLaunch secondLaunch = installation.launchFML();
+        assertEquals("2", secondLaunch.getProperty("essential.version"));
+        assertEquals(props("overridePinnedVersion=2"), readProps(installation.stage2ConfigFile));
+        assertFalse(Files.exists(installation.essentialDir.resolve("Essential (forge_1.8.8).prefetched")));
+    }
+
+    @Test
+    public void testPromptUpdatePrefetchedKeptWhileOffline(Installation installation) throws Exception {
+        installation.addExampleMod("bundled-1");
+
+        Path stage3Meta2 = withBranch(installation.stage3Meta, "2");
+        Files.copy(stage3Meta2, installation.stage3Meta, REPLACE_EXISTING);
+
+        IsolatedLaunch firstLaunch = installation.launchFML();
+        CompletableFuture<?> prefetch = (CompletableFuture<?>) firstLaunch.getClass("gg.essential.loader.stage2.EssentialLoaderBase")
+            .getMethod("prefetchPendingUpdate", String.class)
+            .invoke(null, "essential");
+        assertEquals(true, prefetch.get(30, TimeUnit.SECONDS));
+
+        // Update check fails, so the pending update can neither be re-registered for prefetching nor applied
+        Files.delete(installation.stage3Meta);
+
+        IsolatedLaunch secondLaunch = installation.launchFML();
+        assertEquals("1", secondLaunch.getProperty("essential.version"));
+        assertTrue(Files.exists(installation.essentialDir.resolve("Essential (forge_1.8.8).prefetched")));
+
+        // Once back online and accepted, the prefetched file is installed
+        Files.copy(stage3Meta2, installation.stage3Meta, REPLACE_EXISTING);
+        writeProps(installation.stage2ConfigFile, props("pendingUpdateVersion=2", "pendingUpdateResolution=true"));
+        Files.delete(stage3Meta2.resolveSibling("forge_1-8-8").resolve("download.json"));
+
+        IsolatedLaunch thirdLaunch = installation.launchFML();
+        assertEquals("2", thirdLaunch.getProperty("essential.version"));
+        assertFalse(Files.exists(installation.essentialDir.resolve("Essential (forge_1.8.8).prefetched")));
+    }
+
     @Test
     public void testPromptUpdateRejected(Installation installation) throws Exception {
         installation.addExampleMod("bundled-1");
@@ -4,16 +4,29 @@ import gg.essential.loader.fixtures.Installation;
 import gg.essential.loader.fixtures.IsolatedLaunch;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
 
 import static gg.essential.loader.fixtures.BaseInstallation.withBranch;
 import static gg.essential.loader.stage1.Stage1BundledTests.props;
+import static gg.essential.loader.stage1.Stage1BundledTests.readProps;
 import static gg.essential.loader.stage1.Stage1BundledTests.writeProps;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -55,6 +68,350 @@ public class Stage2Tests {
         assertEquals(expectedHash, md5Hex(Files.readAllBytes(installation.essentialDir.resolve("Essential (forge_1.8.8).jar"))));
     }
 
+    @Test
+    public void testUpdateViaSegmentedDownload(Installation installation) throws Exception {
+        testUpdateViaHttpDownload(installation, true);
+    }
+
+    @Test
+    public void testUpdateViaSegmentedDownloadWithoutRangeSupport(Installation installation) throws Exception {
+        testUpdateViaHttpDownload(installation, false);
+    }
+
+    public void testUpdateViaHttpDownload(Installation installation, boolean rangeRequestsSupported) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Files.delete(installation.stage3Meta);
+        Files.copy(installation.stage3DummyMeta, installation.stage3Meta);
+
+        // Prevent it from using the diff download path
+        Files.delete(installation.stage3DummyMetaDiff);
+
+        // Serve the jar over http instead of via a file url, so it can be requested in ranges
+        String url = installation.httpUrl(installation.stage3DummyJarFile);
+        String checksum = md5Hex(Files.readAllBytes(installation.stage3DummyJarFile));
+        Files.write(installation.stage3DummyMetaDownload, ("{ \"url\": \"" + url + "\", \"checksum\": \"" + checksum + "\" }").getBytes(StandardCharsets.UTF_8));
+        installation.rangeRequestsSupported = rangeRequestsSupported;
+
+        IsolatedLaunch isolatedLaunch = installation.newLaunchFML();
+        isolatedLaunch.setProperty("essential.stage2.download.segments", "4");
+        isolatedLaunch.setProperty("essential.stage2.download.segmentedMinSize", "1");
+        isolatedLaunch.launch();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(isolatedLaunch.getClass("gg.essential.api.tweaker.EssentialTweaker").getDeclaredField("dummyInitialized").getBoolean(null));
+
+        if (rangeRequestsSupported) {
+            assertEquals("4", isolatedLaunch.getProperty("essential.stage2.downloaded.segments"));
+            assertEquals(4, installation.rangeRequests.get());
+        } else {
+            assertNull(isolatedLaunch.getProperty("essential.stage2.downloaded.segments"));
+            assertEquals(0, installation.rangeRequests.get());
+        }
+        assertEquals(checksum, md5Hex(Files.readAllBytes(installation.essentialDir.resolve("Essential (forge_1.8.8).jar"))));
+    }
+
+    @Test
+    public void testUpdateAfterSegmentedDownloadWasKilled(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Files.delete(installation.stage3Meta);
+        Files.copy(installation.stage3DummyMeta, installation.stage3Meta);
+
+        // Prevent it from using the diff download path
+        Files.delete(installation.stage3DummyMetaDiff);
+
+        String url = installation.httpUrl(installation.stage3DummyJarFile);
+        String checksum = md5Hex(Files.readAllBytes(installation.stage3DummyJarFile));
+        Files.write(installation.stage3DummyMetaDownload, ("{ \"url\": \"" + url + "\", \"checksum\": \"" + checksum + "\" }").getBytes(StandardCharsets.UTF_8));
+
+        // Snapshot the part file while the segments are still being downloaded, that is what the game would leave behind
+        // if it was closed at that point
+        Path partFile = installation.essentialDir.resolve("Essential (forge_1.8.8).part");
+        Path partMetaFile = installation.essentialDir.resolve("Essential (forge_1.8.8).part.meta");
+        Map<Path, byte[]> snapshot = new HashMap<>();
+        installation.rangeRequestListener = range -> {
+            if (snapshot.isEmpty() && !range.endsWith("-")) {
+                try {
+                    snapshot.put(partFile, Files.readAllBytes(partFile));
+                    snapshot.put(partMetaFile, Files.readAllBytes(partMetaFile));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        installation.dropConnections.set(Integer.MAX_VALUE);
+
+        IsolatedLaunch isolatedLaunch = installation.newLaunchFML();
+        isolatedLaunch.setProperty("essential.stage2.download.segments", "4");
+        isolatedLaunch.setProperty("essential.stage2.download.segmentedMinSize", "1");
+        isolatedLaunch.launch();
+
+        assertFalse(snapshot.isEmpty(), "Part file was snapshotted during segmented download");
+
+        installation.rangeRequestListener = null;
+        installation.dropConnections.set(0);
+        for (Map.Entry<Path, byte[]> entry : snapshot.entrySet()) {
+            Files.write(entry.getKey(), entry.getValue());
+        }
+
+        isolatedLaunch = installation.newLaunchFML();
+        isolatedLaunch.setProperty("essential.stage2.download.segments", "4");
+        isolatedLaunch.setProperty("essential.stage2.download.segmentedMinSize", "1");
+        isolatedLaunch.launch();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(isolatedLaunch.getClass("gg.essential.api.tweaker.EssentialTweaker").getDeclaredField("dummyInitialized").getBoolean(null));
+        assertNull(isolatedLaunch.getProperty("essential.stage2.downloaded.resumedFrom"));
+        assertEquals(checksum, md5Hex(Files.readAllBytes(installation.essentialDir.resolve("Essential (forge_1.8.8).jar"))));
+    }
+
+    @Test
+    public void testDownloadResumedAfterConnectionLoss(Installation installation) throws Exception {
+        testDownloadAfterConnectionLoss(installation, true);
+    }
+
+    @Test
+    public void testDownloadRestartedAfterConnectionLossWithoutRangeSupport(Installation installation) throws Exception {
+        testDownloadAfterConnectionLoss(installation, false);
+    }
+
+    public void testDownloadAfterConnectionLoss(Installation installation, boolean rangeRequestsSupported) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Files.delete(installation.stage3Meta);
+        Files.copy(installation.stage3DummyMeta, installation.stage3Meta);
+
+        // Prevent it from using the diff download path
+        Files.delete(installation.stage3DummyMetaDiff);
+
+        String url = installation.httpUrl(installation.stage3DummyJarFile);
+        byte[] bytes = Files.readAllBytes(installation.stage3DummyJarFile);
+        String checksum = md5Hex(bytes);
+        Files.write(installation.stage3DummyMetaDownload, ("{ \"url\": \"" + url + "\", \"checksum\": \"" + checksum + "\" }").getBytes(StandardCharsets.UTF_8));
+        installation.rangeRequestsSupported = rangeRequestsSupported;
+
+        int dropAfter = bytes.length / 2;
+        installation.dropConnectionAfter = dropAfter;
+        installation.dropConnections.set(1);
+        installation.jarRequestRanges.clear();
+
+        IsolatedLaunch isolatedLaunch = installation.newLaunchFML();
+        isolatedLaunch.setProperty("essential.stage2.download.segments", "1");
+        isolatedLaunch.launch();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(isolatedLaunch.getClass("gg.essential.api.tweaker.EssentialTweaker").getDeclaredField("dummyInitialized").getBoolean(null));
+        assertEquals(checksum, md5Hex(Files.readAllBytes(installation.essentialDir.resolve("Essential (forge_1.8.8).jar"))));
+
+        assertEquals(Arrays.asList(null, "bytes=" + dropAfter + "-"), installation.jarRequestRanges);
+        if (rangeRequestsSupported) {
+            assertEquals(String.valueOf(dropAfter), isolatedLaunch.getProperty("essential.stage2.downloaded.resumedFrom"));
+            assertEquals(String.valueOf(bytes.length - dropAfter), isolatedLaunch.getProperty("essential.stage2.downloaded.bytes"));
+        } else {
+            assertNull(isolatedLaunch.getProperty("essential.stage2.downloaded.resumedFrom"));
+            assertEquals(String.valueOf(bytes.length), isolatedLaunch.getProperty("essential.stage2.downloaded.bytes"));
+        }
+    }
+
+    @Test
+    public void testUpdateWithSha256Checksum(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Files.delete(installation.stage3Meta);
+        Files.copy(installation.stage3DummyMeta, installation.stage3Meta);
+
+        // Prevent it from using the diff download path
+        Files.delete(installation.stage3DummyMetaDiff);
+
+        String url = installation.httpUrl(installation.stage3DummyJarFile);
+        String checksum = "sha256:" + sha256Hex(Files.readAllBytes(installation.stage3DummyJarFile));
+        Files.write(installation.stage3DummyMetaDownload, ("{ \"url\": \"" + url + "\", \"checksum\": \"" + checksum + "\" }").getBytes(StandardCharsets.UTF_8));
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(isolatedLaunch.getClass("gg.essential.api.tweaker.EssentialTweaker").getDeclaredField("dummyInitialized").getBoolean(null));
+        assertEquals(md5Hex(Files.readAllBytes(installation.stage3DummyJarFile)), md5Hex(Files.readAllBytes(installation.essentialDir.resolve("Essential (forge_1.8.8).jar"))));
+    }
+
+    @Test
+    public void testBackgroundUpdateAppliedOnNextBoot(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Files.delete(installation.stage3Meta);
+        Files.copy(installation.stage3DummyMeta, installation.stage3Meta);
+
+        // Boots the installed version right away, the update is only downloaded in the background
+        IsolatedLaunch isolatedLaunch = installation.newLaunchFML();
+        isolatedLaunch.setProperty("essential.autoUpdate", "background");
+        isolatedLaunch.launch();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertFalse(isolatedLaunch.getClass("gg.essential.api.tweaker.EssentialTweaker").getDeclaredField("dummyInitialized").getBoolean(null));
+
+        // The config is only written once the update has been staged
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!"dummy".equals(readProps(installation.stage2ConfigFile).getProperty("pendingUpdateVersion"))) {
+            assertTrue(System.currentTimeMillis() < deadline, "Background update was not staged in time");
+            Thread.sleep(100);
+        }
+        Path stagedJar = installation.essentialDir.resolve("Essential (forge_1.8.8).1.jar");
+        assertEquals(md5Hex(Files.readAllBytes(installation.stage3DummyJarFile)), md5Hex(Files.readAllBytes(stagedJar)));
+
+        // and installed on the next one
+        IsolatedLaunch secondLaunch = installation.newLaunchFML();
+        secondLaunch.setProperty("essential.autoUpdate", "background");
+        secondLaunch.launch();
+
+        installation.assertModLaunched(secondLaunch);
+        assertTrue(secondLaunch.getClass("gg.essential.api.tweaker.EssentialTweaker").getDeclaredField("dummyInitialized").getBoolean(null));
+        assertNull(readProps(installation.stage2ConfigFile).getProperty("pendingUpdateVersion"));
+        assertFalse(Files.exists(installation.essentialDir.resolve("Essential (forge_1.8.8).jar")));
+    }
+
+    @Test
+    public void testInstallFromBlobStore(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Path essentialJar = installation.essentialDir.resolve("Essential (forge_1.8.8).jar");
+        String expectedHash = md5Hex(Files.readAllBytes(essentialJar));
+
+        // Pretend we're a fresh instance which shares the blob store but has no jar yet and no way to download one
+        Files.delete(essentialJar);
+        Files.delete(essentialJar.resolveSibling(essentialJar.getFileName() + ".meta"));
+        Files.delete(installation.stage3MetaDownload);
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        assertEquals(expectedHash, md5Hex(Files.readAllBytes(essentialJar)));
+    }
+
+    @Test
+    public void testCorruptedExtractedJarIsRepaired(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Path librariesDir = installation.essentialDir.resolve("libraries").resolve("forge_1.8.8");
+        Map<Path, String> expectedHashes = new HashMap<>();
+        try (Stream<Path> stream = Files.list(librariesDir)) {
+            for (Path jar : (Iterable<Path>) stream.filter(it -> it.toString().endsWith(".jar"))::iterator) {
+                expectedHashes.put(jar, md5Hex(Files.readAllBytes(jar)));
+                // Replace rather than modify in place, the file may be hard-linked from the blob store
+                Files.delete(jar);
+                Files.write(jar, "corrupted".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        for (Map.Entry<Path, String> entry : expectedHashes.entrySet()) {
+            assertEquals(entry.getValue(), md5Hex(Files.readAllBytes(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testExtractedJarCorruptedInPlaceIsRepaired(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+
+        Path librariesDir = installation.essentialDir.resolve("libraries").resolve("forge_1.8.8");
+        Map<Path, String> expectedHashes = new HashMap<>();
+        try (Stream<Path> stream = Files.list(librariesDir)) {
+            for (Path jar : (Iterable<Path>) stream.filter(it -> it.toString().endsWith(".jar"))::iterator) {
+                expectedHashes.put(jar, md5Hex(Files.readAllBytes(jar)));
+                // Modify in place, which, given the file is hard-linked, also corrupts the blob it is linked to
+                assertTrue(jar.toFile().setWritable(true));
+                Files.write(jar, "corrupted".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        for (Map.Entry<Path, String> entry : expectedHashes.entrySet()) {
+            assertEquals(entry.getValue(), md5Hex(Files.readAllBytes(entry.getKey())));
+        }
+
+        // and must stay repaired, i.e. the corrupted content must not have been recorded as valid anywhere
+        isolatedLaunch = installation.launchFML();
+
+        installation.assertModLaunched(isolatedLaunch);
+        for (Map.Entry<Path, String> entry : expectedHashes.entrySet()) {
+            assertEquals(entry.getValue(), md5Hex(Files.readAllBytes(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testBootTimingsAreRecorded(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        IsolatedLaunch isolatedLaunch = installation.newLaunchFML();
+        isolatedLaunch.setProperty("essential.loader.timings.json", "true");
+        isolatedLaunch.launch();
+
+        installation.assertModLaunched(isolatedLaunch);
+        for (String phase : new String[]{ "stage0.loadStage1File", "stage1.load", "stage2.findMods", "stage2.download", "stage2.preloadEssential", "stage2.initialize" }) {
+            assertNotNull(isolatedLaunch.getProperty("essential.loader.timing." + phase), phase);
+        }
+        assertTrue(Files.exists(installation.gameDir.resolve("essential").resolve("loader-timings.json")));
+    }
+
+    @Test
+    public void testMetadataResponsesAreRevalidated(Installation installation) throws Exception {
+        installation.addExampleMod();
+
+        installation.launchFML();
+        installation.notModifiedResponses.set(0);
+
+        IsolatedLaunch isolatedLaunch = installation.launchFML();
+        installation.assertModLaunched(isolatedLaunch);
+        assertTrue(installation.notModifiedResponses.get() > 0, "Cached responses were revalidated");
+
+        // Cache entries which we can not make sense of must be treated as if there was no entry
+        Path cacheDir = installation.essentialDir.resolve("loader").resolve("http-cache");
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+                properties.setProperty("fetched", "not a number");
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    properties.store(out, null);
+                }
+            }
+        }
+
+        isolatedLaunch = installation.launchFML();
+        installation.assertModLaunched(isolatedLaunch);
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+                Long.parseLong(properties.getProperty("fetched")); // replaced by a fresh entry
+            }
+        }
+    }
+
     @Test
     public void testRawEssentialInModsFolder(Installation installation) throws Exception {
         installation.addExampleMod();
@@ -29,3 +29,4 @@ include(":integrationTest:common")
 include(":integrationTest:fabric")
 include(":integrationTest:launchwrapper")
 include(":integrationTest:modlauncher")
+include(":benchmarks")
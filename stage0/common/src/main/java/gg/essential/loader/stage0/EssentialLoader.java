@@ -25,6 +25,19 @@ class EssentialLoader {
     }
 
     public Path loadStage1File(Path gameDir) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return doLoadStage1File(gameDir);
+        } finally {
+            // See stage2's BootTimings
+            String key = "essential.loader.timing.stage0.loadStage1File";
+            String value = start + "," + System.nanoTime();
+            String existing = System.getProperty(key);
+            System.setProperty(key, existing == null ? value : existing + ";" + value);
+        }
+    }
+
+    private Path doLoadStage1File(Path gameDir) throws Exception {
         final Path dataDir = gameDir
             .resolve("essential")
             .resolve("loader")
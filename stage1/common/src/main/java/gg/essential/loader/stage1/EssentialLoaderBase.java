@@ -5,23 +5,27 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import gg.essential.loader.stage1.gui.ForkedUpdatePromptUI;
+import gg.essential.loader.stage1.util.BootTimings;
+import gg.essential.loader.stage1.util.Checksum;
+import gg.essential.loader.stage1.util.ChecksumCache;
+import gg.essential.loader.stage1.util.HttpCache;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.Enumeration;
 import java.util.Objects;
 import java.util.Properties;
@@ -55,6 +59,8 @@ public abstract class EssentialLoaderBase {
     private final String gameVersion;
     private Object stage2;
     private boolean loaded;
+    private HttpCache httpCache;
+    private ChecksumCache checksumCache;
 
     EssentialLoaderBase(final String variant, final String gameVersion) {
         this.variant = variant;
@@ -67,6 +73,11 @@ public abstract class EssentialLoaderBase {
         }
         this.loaded = true; // setting this now, no point in retrying when we error
 
+        long start = System.nanoTime();
+
+        this.httpCache = new HttpCache(gameDir.resolve("essential").resolve("loader").resolve("http-cache"));
+        this.checksumCache = new ChecksumCache(gameDir.resolve("essential").resolve("loader").resolve("checksum-cache"));
+
         final Path dataDir = gameDir
             .resolve("essential")
             .resolve("loader")
@@ -153,7 +164,7 @@ public abstract class EssentialLoaderBase {
             localMd5 = properties.getProperty("md5");
 
             // If the checksum is invalid, throw it away
-            if (!localMd5.equals(getChecksum(stage2File))) {
+            if (!localMd5.equals(checksumCache.getChecksum(stage2File, localMd5))) {
                 localVersion = null;
                 localMd5 = null;
             }
@@ -191,7 +202,7 @@ public abstract class EssentialLoaderBase {
         if (autoUpdate == AutoUpdate.Full && !RELAUNCHING) {
             // Update if our local version isn't exactly the same as the latest online version
             FileMeta latestOnlineMeta = fetchLatestMetadata(branch);
-            if (latestOnlineMeta != null && !latestOnlineMeta.checksum.equals(localMd5)) {
+            if (latestOnlineMeta != null && !checksumCache.matches(stage2File, localMd5, latestOnlineMeta.checksum)) {
                 if (doDownload(latestOnlineMeta, stage2File, stage2MetaFile)) {
                     localVersion = latestOnlineMeta.version;
                     localMd5 = latestOnlineMeta.checksum;
@@ -209,7 +220,7 @@ public abstract class EssentialLoaderBase {
 
             // If no override is set and we have a pinned version, then use it
             // This allows users to downgrade the effective version by downgrading the container jar
-            if (pinOverride == null && latestPinnedMeta != null && !localMd5.equals(latestPinnedMeta.checksum)) {
+            if (pinOverride == null && latestPinnedMeta != null && !checksumCache.matches(stage2File, localMd5, latestPinnedMeta.checksum)) {
                 if (doDownload(latestPinnedMeta, stage2File, stage2MetaFile)) {
                     localVersion = latestPinnedMeta.version;
                     localMd5 = latestPinnedMeta.checksum;
@@ -287,6 +298,7 @@ public abstract class EssentialLoaderBase {
         this.stage2 = Class.forName(STAGE2_CLS, true, classLoader)
             .getConstructor(Path.class, String.class)
             .newInstance(gameDir, this.gameVersion);
+        BootTimings.record("stage1.load", start);
         // and continue there
         this.stage2.getClass()
             .getMethod("load")
@@ -351,15 +363,6 @@ public abstract class EssentialLoaderBase {
         }
     }
 
-    private String getChecksum(final Path input) {
-        try (final InputStream inputStream = Files.newInputStream(input)) {
-            return DigestUtils.md5Hex(inputStream);
-        } catch (final Exception e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
     private String getChecksum(final URL input) {
         try (final InputStream inputStream = input.openStream()) {
             return DigestUtils.md5Hex(inputStream);
@@ -392,10 +395,7 @@ public abstract class EssentialLoaderBase {
         try {
             connection = this.prepareConnection(new URL(endpoint));
 
-            String response;
-            try (final InputStream inputStream = connection.getInputStream()) {
-                response = IOUtils.toString(inputStream, Charset.defaultCharset());
-            }
+            String response = this.httpCache.read(connection);
 
             JsonElement jsonElement = new JsonParser().parse(response);
             if (!jsonElement.isJsonObject()) {
@@ -461,16 +461,35 @@ public abstract class EssentialLoaderBase {
 
     private boolean downloadFile(FileMeta meta, Path target) {
         URLConnection connection = null;
+        final String actualHash;
         try {
             connection = this.prepareConnection(meta.url);
-            Files.copy(connection.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+            final long contentLength = connection.getContentLengthLong();
+            // Compute the checksum as we write the file, so we do not need to read it again afterwards
+            final MessageDigest digest = Checksum.newDigest(meta.checksum);
+            try (
+                final InputStream inputStream = connection.getInputStream();
+                final OutputStream outputStream = Files.newOutputStream(target)
+            ) {
+                final byte[] buffer = new byte[8192];
+                long totalRead = 0;
+                int read;
+                while ((read = inputStream.read(buffer)) > 0) {
+                    totalRead += read;
+                    if (contentLength >= 0 && totalRead > contentLength) {
+                        throw new IOException("Received more data than the announced Content-Length of " + contentLength + " bytes");
+                    }
+                    outputStream.write(buffer, 0, read);
+                    digest.update(buffer, 0, read);
+                }
+            }
+            actualHash = Checksum.toChecksum(digest);
         } catch (final IOException e) {
             LOGGER.error("Error occurred when downloading file '{}'.", meta.url, e);
             logConnectionInfoOnError(connection);
             return false;
         }
 
-        final String actualHash = this.getChecksum(target);
         if (!meta.checksum.equals(actualHash)) {
             LOGGER.warn(
                 "Downloaded Essential file checksum did not match what we expected (actual={}, expected={}",
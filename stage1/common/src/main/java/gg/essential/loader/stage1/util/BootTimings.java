@@ -0,0 +1,22 @@
+package gg.essential.loader.stage1.util;
+
+/**
+ * Records how long each phase of the boot takes in `essential.loader.timing.<phase>` system properties.
+ * Stage2 collects and reports them once Essential has been initialized, see its `BootTimings` for details.
+ */
+public class BootTimings {
+    public static final String PROPERTY_PREFIX = "essential.loader.timing.";
+
+    /**
+     * Records that the given phase ran from the given {@code System.nanoTime()} until now.
+     */
+    public static void record(String phase, long startNanos) {
+        long endNanos = System.nanoTime();
+        String key = PROPERTY_PREFIX + phase;
+        synchronized (BootTimings.class) {
+            String existing = System.getProperty(key);
+            String value = startNanos + "," + endNanos;
+            System.setProperty(key, existing == null ? value : existing + ";" + value);
+        }
+    }
+}
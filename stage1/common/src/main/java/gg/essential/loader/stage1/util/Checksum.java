@@ -0,0 +1,120 @@
+package gg.essential.loader.stage1.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+/**
+ * Checksums are hex strings, optionally prefixed with the algorithm which was used to compute them (e.g.
+ * `sha256:e3b0c4...`). Checksums without a prefix are MD5, which is what all checksums used to be, so existing `.meta`
+ * files and older api responses remain valid.
+ *
+ * Wherever we verify a file against an expected checksum, we compute the checksum of the file with the same algorithm
+ * as the expected one.
+ */
+// Note: Keep in sync between stage1 and stage2
+public class Checksum {
+    public static String getChecksum(Path path) {
+        return getChecksum(path, null);
+    }
+
+    /**
+     * Computes the checksum of the given file using the same algorithm as the given checksum (MD5 if {@code null}).
+     */
+    public static String getChecksum(Path path, String like) {
+        MessageDigest digest = newDigest(like);
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return toChecksum(digest);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new digest which, once fed all the bytes of a file, can be turned into the same checksum as
+     * {@link #getChecksum(Path)} would return for that file via {@link #toChecksum(MessageDigest)}.
+     */
+    public static MessageDigest newDigest() {
+        return newDigest(null);
+    }
+
+    /**
+     * Creates a new digest using the same algorithm as the given checksum (MD5 if {@code null}).
+     */
+    public static MessageDigest newDigest(String like) {
+        return Algorithm.of(like).newDigest();
+    }
+
+    public static String toChecksum(MessageDigest digest) {
+        return Algorithm.of(digest).prefix + Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Returns whether the given checksums were computed with the same algorithm, i.e. whether comparing them tells us
+     * anything about whether they are for the same content.
+     */
+    public static boolean isSameAlgorithm(String checksum, String otherChecksum) {
+        return Algorithm.of(checksum) == Algorithm.of(otherChecksum);
+    }
+
+    /**
+     * Returns a short name of the algorithm used for the given checksum (e.g. `md5` or `sha256`).
+     */
+    public static String getAlgorithmName(String checksum) {
+        return Algorithm.of(checksum).name;
+    }
+
+    private enum Algorithm {
+        MD5("md5", "", "MD5"),
+        // The JDK's SHA-2 implementations are intrinsified on modern CPUs (SHA extensions), so in practice this is
+        // not slower than MD5 while being a lot stronger
+        SHA256("sha256", "sha256:", "SHA-256"),
+        SHA512("sha512", "sha512:", "SHA-512"),
+        ;
+
+        private final String name;
+        private final String prefix;
+        private final String jdkName;
+
+        Algorithm(String name, String prefix, String jdkName) {
+            this.name = name;
+            this.prefix = prefix;
+            this.jdkName = jdkName;
+        }
+
+        private MessageDigest newDigest() {
+            return DigestUtils.getDigest(jdkName);
+        }
+
+        private static Algorithm of(String checksum) {
+            if (checksum != null) {
+                for (Algorithm algorithm : values()) {
+                    if (algorithm != MD5 && checksum.startsWith(algorithm.prefix)) {
+                        return algorithm;
+                    }
+                }
+            }
+            // Unknown algorithms also end up here, and will then simply fail to verify
+            return MD5;
+        }
+
+        private static Algorithm of(MessageDigest digest) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.jdkName.equals(digest.getAlgorithm())) {
+                    return algorithm;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + digest.getAlgorithm());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package gg.essential.loader.stage1.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * A persistent cache for the checksums of local files (the jars we verify against their `.meta` files on every boot).
+ *
+ * Alongside each checksum we store the size, modification time and (where supported) file key of the file it was
+ * computed for. As long as all of these still match, the file is assumed to be unchanged and the stored checksum is
+ * used instead of reading the whole file again.
+ *
+ * How many lookups could be answered from the cache is exposed via the `essential.loader.checksumCache.hits` and
+ * `essential.loader.checksumCache.misses` system properties.
+ *
+ * Any failure to read or write the cache is ignored, it'll simply behave as if there was no cache.
+ */
+// Note: Keep in sync between stage1 and stage2
+public class ChecksumCache {
+    private static final Logger LOGGER = LogManager.getLogger(ChecksumCache.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("essential.loader.checksumCache", "true"));
+
+    private static final String PATH_KEY = "path";
+    private static final String SIZE_KEY = "size";
+    private static final String MODIFIED_KEY = "modified";
+    private static final String FILE_KEY_KEY = "fileKey";
+    private static final String CHECKSUM_PREFIX = "checksum.";
+
+    private final Path dir;
+
+    public ChecksumCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the checksum of the given file, or {@code null} if it could not be read.
+     */
+    public String getChecksum(Path file) {
+        return getChecksum(file, null);
+    }
+
+    /**
+     * Returns the checksum of the given file, computed with the same algorithm as the given checksum, or {@code null}
+     * if it could not be read.
+     * See {@link Checksum#getChecksum(Path, String)}.
+     */
+    public String getChecksum(Path file, String like) {
+        String checksumKey = CHECKSUM_PREFIX + Checksum.getAlgorithmName(like);
+        Path absoluteFile = file.toAbsolutePath().normalize();
+        String path = absoluteFile.toString();
+        Path entryFile = dir.resolve(DigestUtils.md5Hex(path.getBytes(StandardCharsets.UTF_8)) + ".properties");
+
+        Properties attributes;
+        try {
+            attributes = readAttributes(absoluteFile);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read attributes of " + file + ":", e);
+            return null;
+        }
+
+        Properties cached = null;
+        if (ENABLED) {
+            cached = load(entryFile, path);
+            if (cached != null && !hasAttributes(cached, attributes)) {
+                cached = null; // file has changed, none of the stored checksums are valid any more
+            }
+            String checksum = cached != null ? cached.getProperty(checksumKey) : null;
+            if (checksum != null) {
+                count("hits");
+                return checksum;
+            }
+            count("misses");
+        }
+
+        String checksum = Checksum.getChecksum(absoluteFile, like);
+        if (checksum == null) {
+            return null;
+        }
+
+        if (ENABLED) {
+            try {
+                // Only store if the file did not change while we were reading it
+                if (attributes.equals(readAttributes(absoluteFile))) {
+                    Properties entry = cached != null ? cached : attributes;
+                    entry.setProperty(PATH_KEY, path);
+                    entry.setProperty(checksumKey, checksum);
+                    store(entryFile, entry);
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Failed to read attributes of " + file + ":", e);
+            }
+        }
+
+        return checksum;
+    }
+
+    /**
+     * Returns whether the given file, which is known to have the first checksum, also has the second one.
+     * If both checksums use the same algorithm, that is simply the case if they are equal. Otherwise the file's
+     * checksum is computed with the algorithm of the second one.
+     */
+    public boolean matches(Path file, String fileChecksum, String otherChecksum) {
+        if (fileChecksum == null || otherChecksum == null) {
+            return false;
+        }
+        if (Checksum.isSameAlgorithm(fileChecksum, otherChecksum)) {
+            return fileChecksum.equals(otherChecksum);
+        }
+        return otherChecksum.equals(getChecksum(file, otherChecksum));
+    }
+
+    private static Properties readAttributes(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Properties properties = new Properties();
+        properties.setProperty(SIZE_KEY, String.valueOf(attributes.size()));
+        properties.setProperty(MODIFIED_KEY, String.valueOf(attributes.lastModifiedTime().toMillis()));
+        properties.setProperty(FILE_KEY_KEY, String.valueOf(attributes.fileKey()));
+        return properties;
+    }
+
+    private static boolean hasAttributes(Properties entry, Properties attributes) {
+        for (String key : attributes.stringPropertyNames()) {
+            if (!attributes.getProperty(key).equals(entry.getProperty(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void count(String kind) {
+        String key = "essential.loader.checksumCache." + kind;
+        System.setProperty(key, String.valueOf(Integer.getInteger(key, 0) + 1));
+    }
+
+    private static Properties load(Path file, String path) {
+        if (Files.notExists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to read cached checksum at " + file + ":", e);
+            return null;
+        }
+        if (!path.equals(properties.getProperty(PATH_KEY))) {
+            return null; // hash collision
+        }
+        return properties;
+    }
+
+    private void store(Path file, Properties properties) {
+        try {
+            Files.createDirectories(dir);
+            Path tempFile = Files.createTempFile(dir, "tmp-", ".properties");
+            try {
+                try (Writer out = Files.newBufferedWriter(tempFile)) {
+                    properties.store(out, null);
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write cached checksum to " + file + ":", e);
+        }
+    }
+}
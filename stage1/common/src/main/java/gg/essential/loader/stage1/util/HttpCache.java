@@ -0,0 +1,152 @@
+package gg.essential.loader.stage1.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * A persistent cache for small metadata responses (the api's json responses, not actual downloads).
+ *
+ * Responses which come with an `ETag` or `Last-Modified` header are stored on disk, so on the next boot we can send a
+ * conditional request and, if the server replies with `304 Not Modified`, use the stored body instead of receiving it
+ * again. If a max-age is configured, stored responses younger than that are used without any request at all.
+ *
+ * Any failure to read or write the cache is ignored, it'll simply behave as if there was no cache.
+ */
+// Note: Keep in sync between stage1 and stage2
+public class HttpCache {
+    private static final Logger LOGGER = LogManager.getLogger(HttpCache.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("essential.loader.httpCache", "true"));
+    private static final long MAX_AGE_MILLIS = Long.getLong("essential.loader.httpCache.maxAgeSeconds", 0) * 1000;
+
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String FETCHED_KEY = "fetched";
+    private static final String BODY_KEY = "body";
+
+    private final Path dir;
+
+    public HttpCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Reads the body of the given, not yet connected, connection, either from the cache or from the server.
+     */
+    public String read(URLConnection connection) throws IOException {
+        if (!ENABLED || !(connection instanceof HttpURLConnection)) {
+            return readBody(connection);
+        }
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+
+        String url = connection.getURL().toString();
+        Path file = dir.resolve(DigestUtils.md5Hex(url.getBytes(StandardCharsets.UTF_8)) + ".properties");
+        Properties cached = load(file, url);
+
+        if (cached != null) {
+            long fetched = Long.parseLong(cached.getProperty(FETCHED_KEY, "0"));
+            long age = System.currentTimeMillis() - fetched;
+            if (age >= 0 && age < MAX_AGE_MILLIS) {
+                LOGGER.debug("Using cached response for {} ({}ms old)", url, age);
+                return cached.getProperty(BODY_KEY);
+            }
+
+            String etag = cached.getProperty(ETAG_KEY);
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            String lastModified = cached.getProperty(LAST_MODIFIED_KEY);
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LOGGER.debug("Server reported cached response for {} as still up-to-date", url);
+                cached.setProperty(FETCHED_KEY, String.valueOf(System.currentTimeMillis()));
+                store(file, cached);
+                return cached.getProperty(BODY_KEY);
+            }
+        }
+
+        String body = readBody(connection);
+
+        if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+            String etag = connection.getHeaderField("ETag");
+            String lastModified = connection.getHeaderField("Last-Modified");
+            if (etag != null || lastModified != null || MAX_AGE_MILLIS > 0) {
+                Properties entry = new Properties();
+                entry.setProperty("url", url);
+                if (etag != null) {
+                    entry.setProperty(ETAG_KEY, etag);
+                }
+                if (lastModified != null) {
+                    entry.setProperty(LAST_MODIFIED_KEY, lastModified);
+                }
+                entry.setProperty(FETCHED_KEY, String.valueOf(System.currentTimeMillis()));
+                entry.setProperty(BODY_KEY, body);
+                store(file, entry);
+            }
+        }
+
+        return body;
+    }
+
+    private static String readBody(URLConnection connection) throws IOException {
+        try (InputStream inputStream = connection.getInputStream()) {
+            return IOUtils.toString(inputStream, Charset.defaultCharset());
+        }
+    }
+
+    private static Properties load(Path file, String url) {
+        if (Files.notExists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to read cached response at " + file + ":", e);
+            return null;
+        }
+        if (!url.equals(properties.getProperty("url")) || properties.getProperty(BODY_KEY) == null) {
+            return null; // hash collision or incomplete entry
+        }
+        try {
+            Long.parseLong(properties.getProperty(FETCHED_KEY, "0"));
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Failed to read cached response at " + file + ":", e);
+            return null;
+        }
+        return properties;
+    }
+
+    private void store(Path file, Properties properties) {
+        try {
+            Files.createDirectories(dir);
+            Path tempFile = Files.createTempFile(dir, "tmp-", ".properties");
+            try {
+                try (Writer out = Files.newBufferedWriter(tempFile)) {
+                    properties.store(out, null);
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write cached response to " + file + ":", e);
+        }
+    }
+}
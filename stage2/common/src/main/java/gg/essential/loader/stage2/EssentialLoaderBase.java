@@ -9,9 +9,19 @@ import gg.essential.loader.stage2.data.ModId;
 import gg.essential.loader.stage2.data.ModJarMetadata;
 import gg.essential.loader.stage2.data.ModVersion;
 import gg.essential.loader.stage2.diff.DiffPatcher;
+import gg.essential.loader.stage2.download.PartialDownload;
+import gg.essential.loader.stage2.download.SegmentedDownload;
+import gg.essential.loader.stage2.download.Transfer;
 import gg.essential.loader.stage2.jvm.ForkedJvmLoaderSwingUI;
 import gg.essential.loader.stage2.restart.ForkedNeedsRestartUI;
+import gg.essential.loader.stage2.util.BlobStore;
+import gg.essential.loader.stage2.util.BootTimings;
 import gg.essential.loader.stage2.util.Checksum;
+import gg.essential.loader.stage2.util.ChecksumCache;
+import gg.essential.loader.stage2.util.ExtractedJarsIndex;
+import gg.essential.loader.stage2.util.HttpCache;
+import gg.essential.loader.stage2.util.JarInspection;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -21,9 +31,9 @@ import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -31,16 +41,17 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.charset.Charset;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -48,9 +59,18 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
-import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -59,6 +79,9 @@ import static gg.essential.loader.stage2.Utils.findNextMostRecentFile;
 import static gg.essential.loader.stage2.util.Checksum.getChecksum;
 import static gg.essential.loader.stage2.util.VersionComparison.compareVersions;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 
@@ -74,6 +97,13 @@ public abstract class EssentialLoaderBase {
     private static final String DOWNLOAD_URL = VERSION_URL + "/download";
     private static final String DIFF_URL = VERSION_BASE_URL + "/diff/%s/platforms/%s";
     private static final String CHANGELOG_URL = VERSION_BASE_URL + "/changelog";
+    private static final String BATCH_VERSIONS_URL = BASE_URL + "/v1/versions/platforms/%s";
+    private static final String PART_FILE_SUFFIX = ".part";
+    private static final String PREFETCHED_FILE_SUFFIX = ".prefetched";
+    private static final int RESUME_ATTEMPTS = Integer.getInteger("essential.stage2.download.resumeAttempts", 3);
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int DOWNLOAD_SEGMENTS = Integer.getInteger("essential.stage2.download.segments", 4);
+    private static final long DOWNLOAD_SEGMENTED_MIN_SIZE = Long.getLong("essential.stage2.download.segmentedMinSize", 8 * 1024 * 1024);
     protected static final String CLASS_NAME = "gg.essential.api.tweaker.EssentialTweaker";
     private static final String FILE_BASE_NAME = "Essential (%s)";
     protected static final String FILE_EXTENSION = "jar";
@@ -81,12 +111,44 @@ public abstract class EssentialLoaderBase {
     private static final String OVERRIDE_PINNED_VERSION_KEY = "overridePinnedVersion";
     private static final String PENDING_UPDATE_VERSION_KEY = "pendingUpdateVersion";
     private static final String PENDING_UPDATE_RESOLUTION_KEY = "pendingUpdateResolution";
+    /** File name of the jar which a background update staged with {@link #PENDING_UPDATE_VERSION_KEY} supersedes. */
+    private static final String PENDING_UPDATE_REPLACES_KEY = "pendingUpdateReplaces";
+
+    /** Maximum number of concurrent requests used to resolve the latest versions of all mods, 1 to disable. */
+    private static final int RESOLVE_THREADS = Integer.getInteger("essential.stage2.resolve.threads", 4);
+    /** Whether to try resolving the latest versions of all mods with a single request. */
+    private static final boolean RESOLVE_BATCHED = Boolean.parseBoolean(System.getProperty("essential.stage2.resolve.batch", "true"));
+    /** How long to not try the batched request again after the server told us it does not support it. */
+    private static final long RESOLVE_BATCHED_UNSUPPORTED_RETRY_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("essential.stage2.resolve.batch.retryHours", 24));
+    /** How long to not try the batched request again after it failed for other reasons, e.g. because we are offline. */
+    private static final long RESOLVE_BATCHED_FAILED_RETRY_MILLIS = TimeUnit.HOURS.toMillis(1);
 
     private final Path gameDir;
     private final String gameVersion;
     private final String apiGameVersion;
     private final String currentStage2Version;
     private final LoaderUI ui;
+    private final HttpCache httpCache;
+    private final ChecksumCache checksumCache;
+    protected final BlobStore blobStore;
+    private final Path jarInspectionCacheDir;
+    /** Contains the time until which we should not try resolving mods with a batched request, see {@link #fetchBatchedVersions}. */
+    private final Path batchUnavailableFile;
+
+    /**
+     * Latest versions of mods, resolved concurrently ahead of time by {@link #resolveMods(List)}.
+     * Only contains entries for the branch each mod was configured with.
+     */
+    private final Map<Mod, Future<ModJarMetadata>> resolvedLatestVersions = new ConcurrentHashMap<>();
+    /**
+     * Download/diff metadata, fetched ahead of time by {@link #resolveMods(List)}, keyed by endpoint.
+     */
+    private final Map<String, Future<FileMeta>> resolvedFileMetas = new ConcurrentHashMap<>();
+
+    /**
+     * Pending updates which the mod may ask us to prefetch via {@link #prefetchPendingUpdate(String)}, keyed by slug.
+     */
+    private static final Map<String, PendingUpdate> PREFETCHABLE_UPDATES = new ConcurrentHashMap<>();
 
     public EssentialLoaderBase(final Path gameDir, final String gameVersion) {
         this.gameDir = gameDir;
@@ -111,6 +173,12 @@ public abstract class EssentialLoaderBase {
             new LoaderLoggingUI().updatesEveryMillis(1000),
             new ForkedJvmLoaderSwingUI().updatesEveryMillis(1000 / 60)
         );
+
+        this.httpCache = new HttpCache(gameDir.resolve("essential").resolve("loader").resolve("http-cache"));
+        this.checksumCache = new ChecksumCache(gameDir.resolve("essential").resolve("loader").resolve("checksum-cache"));
+        this.blobStore = new BlobStore(gameDir.resolve("essential").resolve("loader").resolve("blobs"));
+        this.jarInspectionCacheDir = gameDir.resolve("essential").resolve("loader").resolve("jar-info");
+        this.batchUnavailableFile = gameDir.resolve("essential").resolve("loader").resolve("batch-unavailable");
     }
 
     public void load() throws IOException {
@@ -123,14 +191,23 @@ public abstract class EssentialLoaderBase {
             return;
         }
 
+        long start = System.nanoTime();
         List<Mod> modList = findMods();
+        BootTimings.record("stage2.findMods", start);
+
+        start = System.nanoTime();
+        resolveMods(modList);
+        BootTimings.record("stage2.resolveMods", start);
+
         Map<Mod, ModJarMetadata> loadedMods = new HashMap<>();
         for (Mod mod : modList) {
             if (Files.notExists(mod.dataDir)) { // check first, symlinks may exist but Java does not consider them directories
                 Files.createDirectories(mod.dataDir);
             }
 
+            start = System.nanoTime();
             ModJarMetadata loadedMeta = loadMod(mod);
+            BootTimings.record("stage2.loadMod." + mod.safeSlug(), start);
 
             if (loadedMeta == null) {
                 continue;
@@ -144,6 +221,8 @@ public abstract class EssentialLoaderBase {
             }
         }
 
+        blobStore.prune();
+
         if (loadedMods.keySet().stream().anyMatch(Mod::isEssential)) {
             loadPlatform();
         }
@@ -228,6 +307,252 @@ public abstract class EssentialLoaderBase {
         return modList;
     }
 
+    /**
+     * Fetches the metadata which {@link #loadMod(Mod)} is going to need for all mods concurrently, so each mod does not
+     * have to wait for the network round trips of all the mods before it.
+     * The mods are still loaded (and updates installed) one after the other, in the same order as before, only the
+     * requests are moved up front. Whatever {@link #loadMod(Mod)} ends up needing but was not resolved here, it'll
+     * simply fetch itself.
+     */
+    private void resolveMods(List<Mod> mods) {
+        // Mods with auto-update turned off do not talk to the network unless they have to, so we won't either
+        // and mods updating in the background do so off the boot path, so there's no point in resolving them here.
+        List<Mod> onlineMods = mods.stream()
+            .filter(mod -> mod.autoUpdate != AutoUpdate.Off && mod.autoUpdate != AutoUpdate.Background)
+            .collect(Collectors.toList());
+        if (onlineMods.size() <= 1) {
+            return; // nothing to be gained
+        }
+
+        // If the server supports it, we can get the latest versions of all mods with a single request
+        Map<Mod, JsonObject> batchedResponses = RESOLVE_BATCHED && isBatchAvailable() ? fetchBatchedVersions(onlineMods) : Collections.emptyMap();
+
+        int threads = Math.min(RESOLVE_THREADS, onlineMods.size());
+        Executor executor = threads > 1 ? newResolverExecutor(threads) : null;
+
+        for (Mod mod : onlineMods) {
+            JsonObject batchedResponse = batchedResponses.get(mod);
+            if (batchedResponse != null) {
+                ModJarMetadata latestMeta = parseLatestVersion(mod, batchedResponse.get("latest").getAsJsonObject());
+                resolvedLatestVersions.put(mod, CompletableFuture.completedFuture(latestMeta));
+
+                JsonElement download = batchedResponse.get("download");
+                if (latestMeta != null && download != null && download.isJsonObject()) {
+                    String endpoint = downloadEndpoint(latestMeta.getMod(), latestMeta.getVersion());
+                    FileMeta downloadMeta = parseFileMeta(download.getAsJsonObject());
+                    resolvedFileMetas.put(endpoint, CompletableFuture.completedFuture(downloadMeta));
+                }
+
+                if (executor != null) {
+                    String fileEndpoint = guessUpdateFileEndpoint(mod, readLocalMetaFile(mod), latestMeta);
+                    if (fileEndpoint != null && !resolvedFileMetas.containsKey(fileEndpoint)) {
+                        resolvedFileMetas.put(fileEndpoint, CompletableFuture.supplyAsync(() -> fetchFileMeta(fileEndpoint), executor));
+                    }
+                }
+                continue;
+            }
+
+            if (executor == null) {
+                continue; // concurrent resolution disabled, loadMod will fetch it
+            }
+
+            ModJarMetadata localMeta = readLocalMetaFile(mod);
+            resolvedLatestVersions.put(mod, CompletableFuture.supplyAsync(() -> {
+                ModJarMetadata latestMeta = fetchLatestVersion(mod, mod.branch);
+
+                // If it looks like we are going to need to update, we can fetch the download/diff url right away too
+                String fileEndpoint = guessUpdateFileEndpoint(mod, localMeta, latestMeta);
+                if (fileEndpoint != null) {
+                    // Must be registered before we return, so loadMod is guaranteed to see it
+                    resolvedFileMetas.put(fileEndpoint, CompletableFuture.supplyAsync(() -> fetchFileMeta(fileEndpoint), executor));
+                }
+
+                return latestMeta;
+            }, executor));
+        }
+    }
+
+    private static Executor newResolverExecutor(int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Essential Loader Resolver #" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Fetches the latest versions of all given mods (and their download urls, if the server includes them) with a
+     * single request.
+     * The response is expected to be of the form
+     * <pre>{@code
+     * { "versions": [ { "mod": "<full slug>", "branch": "<branch>", "latest": { ... }, "download": { ... } }, ... ] }
+     * }</pre>
+     * where "latest" and "download" are the same objects which the individual version and download endpoints return.
+     * Mods not listed in the response (or all of them, if the server does not support batched requests) are returned
+     * without entry and must be resolved individually.
+     *
+     * Because the individual requests only start once this one has failed, a failure is remembered (for a day if the
+     * server does not support batched requests, for an hour otherwise), so we do not pay for it on every boot.
+     */
+    private Map<Mod, JsonObject> fetchBatchedVersions(List<Mod> mods) {
+        StringBuilder endpoint = new StringBuilder(String.format(BATCH_VERSIONS_URL, this.apiGameVersion));
+        try {
+            for (Mod mod : mods) {
+                endpoint.append(endpoint.indexOf("?") == -1 ? '?' : '&');
+                endpoint.append("mod=").append(URLEncoder.encode(mod.id.getFullSlug() + "@" + mod.branch, "UTF-8"));
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e); // UTF-8 is always supported
+        }
+
+        JsonObject responseObject;
+        URLConnection connection = null;
+        try {
+            connection = this.prepareConnection(new URL(endpoint.toString()));
+            responseObject = readJsonObject(connection, false);
+        } catch (FileNotFoundException e) {
+            LOGGER.debug("Server does not support batched version lookups, resolving mods individually.");
+            markBatchUnavailable(RESOLVE_BATCHED_UNSUPPORTED_RETRY_MILLIS);
+            return Collections.emptyMap();
+        } catch (JsonParseException e) {
+            LOGGER.warn("Failed to parse batched versions from " + endpoint + ", resolving mods individually:", e);
+            markBatchUnavailable(RESOLVE_BATCHED_UNSUPPORTED_RETRY_MILLIS);
+            return Collections.emptyMap();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to fetch batched versions from " + endpoint + ", resolving mods individually:", e);
+            logConnectionInfoOnError(connection);
+            markBatchUnavailable(RESOLVE_BATCHED_FAILED_RETRY_MILLIS);
+            return Collections.emptyMap();
+        }
+
+        JsonElement jsonVersions = responseObject.get("versions");
+        if (jsonVersions == null || !jsonVersions.isJsonArray()) {
+            LOGGER.warn("Unexpected batched versions response data (versions={})", jsonVersions);
+            markBatchUnavailable(RESOLVE_BATCHED_UNSUPPORTED_RETRY_MILLIS);
+            return Collections.emptyMap();
+        }
+
+        Map<Mod, JsonObject> result = new HashMap<>();
+        for (JsonElement jsonEntry : jsonVersions.getAsJsonArray()) {
+            if (!jsonEntry.isJsonObject()) {
+                continue;
+            }
+            JsonObject entry = jsonEntry.getAsJsonObject();
+            JsonElement jsonMod = entry.get("mod");
+            JsonElement jsonBranch = entry.get("branch");
+            JsonElement jsonLatest = entry.get("latest");
+            if (jsonMod == null || !jsonMod.isJsonPrimitive() || jsonBranch == null || !jsonBranch.isJsonPrimitive()) {
+                continue;
+            }
+            if (jsonLatest == null) {
+                continue; // server does not know, let the mod figure it out itself
+            }
+            if (jsonLatest.isJsonNull()) {
+                // Same as an empty response from the individual endpoint: no version for this platform
+                entry.add("latest", new JsonObject());
+            } else if (!jsonLatest.isJsonObject()) {
+                continue;
+            }
+            for (Mod mod : mods) {
+                if (mod.id.getFullSlug().equals(jsonMod.getAsString()) && mod.branch.equals(jsonBranch.getAsString())) {
+                    result.put(mod, entry);
+                }
+            }
+        }
+        LOGGER.debug("Resolved {} of {} mods via batched version lookup.", result.size(), mods.size());
+        return result;
+    }
+
+    private boolean isBatchAvailable() {
+        try {
+            if (Files.notExists(batchUnavailableFile)) {
+                return true;
+            }
+            long retryAt = Long.parseLong(new String(Files.readAllBytes(batchUnavailableFile), StandardCharsets.UTF_8).trim());
+            if (System.currentTimeMillis() < retryAt) {
+                LOGGER.debug("Batched version lookup recently failed, resolving mods individually.");
+                return false;
+            }
+            return true;
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("Failed to read " + batchUnavailableFile + ":", e);
+            return true;
+        }
+    }
+
+    private void markBatchUnavailable(long retryAfterMillis) {
+        try {
+            Files.createDirectories(batchUnavailableFile.getParent());
+            Files.write(batchUnavailableFile, String.valueOf(System.currentTimeMillis() + retryAfterMillis).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write " + batchUnavailableFile + ":", e);
+        }
+    }
+
+    /**
+     * Reads the metadata of the current local jar from its meta file only (never from the jar itself, that's too
+     * expensive for a guess).
+     */
+    private ModJarMetadata readLocalMetaFile(Mod mod) {
+        try {
+            if (Files.notExists(mod.dataDir)) {
+                return ModJarMetadata.EMPTY;
+            }
+            Path file = findMostRecentFile(mod.dataDir, mod.fileBaseName, FILE_EXTENSION).getKey();
+            if (Files.notExists(file)) {
+                return ModJarMetadata.EMPTY;
+            }
+            return ModJarMetadata.readFromMetaFile(file);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to read existing " + mod + " meta file", e);
+            return ModJarMetadata.EMPTY;
+        }
+    }
+
+    /**
+     * Predicts which file endpoint {@link #update} is going to query for the given mod, or {@code null} if it likely
+     * won't query any. Mirrors the decisions in {@link #loadMod(Mod)} for the common cases only.
+     */
+    private String guessUpdateFileEndpoint(Mod mod, ModJarMetadata localMeta, ModJarMetadata latestMeta) {
+        if (latestMeta == null) {
+            return null; // nothing to update to
+        }
+        if (localMeta == ModJarMetadata.EMPTY) {
+            if (mod.pinnedFile != null) {
+                return null; // will be installed from the pinned file
+            }
+            return downloadEndpoint(latestMeta.getMod(), latestMeta.getVersion());
+        }
+        if (mod.autoUpdate != AutoUpdate.Full) {
+            return null; // updates require consent
+        }
+        if (mod.isPinnedVersionMoreRecentThan(localMeta.getVersion())) {
+            return null; // pinned file will be installed first, too complicated to predict
+        }
+        if (Objects.equals(latestMeta.getChecksum(), localMeta.getChecksum())) {
+            return null; // already up-to-date
+        }
+        if (localMeta.getVersion().isUnknown()) {
+            return downloadEndpoint(latestMeta.getMod(), latestMeta.getVersion());
+        }
+        return diffEndpoint(latestMeta.getMod(), localMeta.getVersion(), latestMeta.getVersion());
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.error("Error occurred while resolving mods:", e.getCause());
+            return null;
+        }
+    }
+
     private ModJarMetadata loadMod(Mod mod) throws IOException {
         Path essentialFile = findMostRecentFile(mod.dataDir, mod.fileBaseName, FILE_EXTENSION).getKey();
 
@@ -253,13 +578,13 @@ public abstract class EssentialLoaderBase {
                 }
                 currentMeta = mod.pinnedFileMeta();
             } else {
-                ModJarMetadata latestMeta = fetchLatestVersion(mod, mod.branch);
+                ModJarMetadata latestMeta = resolveLatestVersion(mod);
                 if (latestMeta == null) {
                     return null;
                 }
                 this.ui.start();
                 try {
-                    Path downloadedFile = update(mod, essentialFile, currentMeta, latestMeta);
+                    Path downloadedFile = update(mod, essentialFile, currentMeta, latestMeta, this.ui);
                     if (downloadedFile == null) {
                         return null;
                     }
@@ -280,12 +605,18 @@ public abstract class EssentialLoaderBase {
             currentMeta = mod.pinnedFileMeta();
         }
 
+        // Whether a file prefetched during a previous boot (see prefetchPendingUpdate) can no longer be of any use.
+        // Unless we know that for sure, it is kept, e.g. when we are offline and could not even check for updates.
+        boolean prefetchedFileObsolete = false;
+
         if (mod.autoUpdate == AutoUpdate.Full) {
-            ModJarMetadata latestMeta = fetchLatestVersion(mod, mod.branch);
-            if (latestMeta != null && !latestMeta.getChecksum().equals(currentMeta.getChecksum())) {
+            ModJarMetadata latestMeta = resolveLatestVersion(mod);
+            // We are either at the latest version already, or update() just used (or threw away) the prefetched file
+            prefetchedFileObsolete = latestMeta != null;
+            if (latestMeta != null && !checksumCache.matches(essentialFile, currentMeta.getChecksum(), latestMeta.getChecksum())) {
                 this.ui.start();
                 try {
-                    Path downloadedFile = update(mod, essentialFile, currentMeta, latestMeta);
+                    Path downloadedFile = update(mod, essentialFile, currentMeta, latestMeta, this.ui);
                     if (downloadedFile != null) {
                         essentialFile = mod.installFile(essentialFile, downloadedFile, latestMeta);
                         currentMeta = latestMeta;
@@ -316,13 +647,13 @@ public abstract class EssentialLoaderBase {
 
             // If no override is set and we have a pinned version, then use it
             // This allows users to downgrade the effective version by downgrading the container jar
-            if (pinOverride == null && latestPinnedVersion != null && !currentMeta.getChecksum().equals(mod.pinnedFileMd5)) {
+            if (pinOverride == null && latestPinnedVersion != null && !checksumCache.matches(essentialFile, currentMeta.getChecksum(), mod.pinnedFileMd5)) {
                 essentialFile = mod.installPinnedFile(essentialFile);
                 currentMeta = mod.pinnedFileMeta();
             }
 
             // Check if there's a newer version we could be using
-            ModJarMetadata onlineMeta = fetchLatestVersion(mod, mod.branch);
+            ModJarMetadata onlineMeta = resolveLatestVersion(mod);
             String onlineVersion = onlineMeta != null ? onlineMeta.getVersion().getVersion() : null;
             String localVersion = currentMeta.getVersion().getVersion();
             if (onlineVersion != null && localVersion != null && compareVersions(onlineVersion, localVersion) > 0) {
@@ -342,7 +673,7 @@ public abstract class EssentialLoaderBase {
                     if (resolution == Boolean.TRUE) {
                         this.ui.start();
                         try {
-                            Path downloadedFile = update(mod, essentialFile, currentMeta, onlineMeta);
+                            Path downloadedFile = update(mod, essentialFile, currentMeta, onlineMeta, this.ui);
                             if (downloadedFile != null) {
                                 essentialFile = mod.installFile(essentialFile, downloadedFile, onlineMeta);
                                 currentMeta = onlineMeta;
@@ -351,6 +682,8 @@ public abstract class EssentialLoaderBase {
                                 mod.config.remove(PENDING_UPDATE_VERSION_KEY);
                                 mod.config.remove(PENDING_UPDATE_RESOLUTION_KEY);
                                 mod.writeConfigFile();
+
+                                prefetchedFileObsolete = true; // applied
                             }
                         } finally {
                             this.ui.complete();
@@ -359,6 +692,7 @@ public abstract class EssentialLoaderBase {
                         LOGGER.warn("Found newer Essential version {} [{}], skipping {}",
                             onlineVersion, mod.branch,
                             resolution == Boolean.FALSE ? "at user request" : "because no consent could be acquired");
+                        prefetchedFileObsolete = resolution == Boolean.FALSE; // rejected
                     }
                 } else {
                     LOGGER.info("Found newer Essential version {} [{}]", onlineVersion, mod.branch);
@@ -366,17 +700,62 @@ public abstract class EssentialLoaderBase {
                     mod.config.setProperty(PENDING_UPDATE_VERSION_KEY, onlineVersion);
                     mod.config.remove(PENDING_UPDATE_RESOLUTION_KEY);
                     mod.writeConfigFile();
+
+                    // Anything prefetched so far was for a different version
+                    prefetchedFileObsolete = true;
+                }
+
+                // If the update is still pending and has not been rejected, the mod may prefetch it while the game runs
+                if (Objects.equals(mod.config.getProperty(PENDING_UPDATE_VERSION_KEY), onlineVersion)
+                    && booleanOrNull(mod.config.getProperty(PENDING_UPDATE_RESOLUTION_KEY)) != Boolean.FALSE) {
+                    PREFETCHABLE_UPDATES.put(mod.slug(), new PendingUpdate(mod, essentialFile, currentMeta, onlineMeta));
+                }
+            } else if (onlineVersion != null && localVersion != null) {
+                // Nothing newer (anymore) than what we have installed
+                prefetchedFileObsolete = true;
+            }
+        } else if (mod.autoUpdate == AutoUpdate.Background) {
+            String pendingUpdateVersion = mod.config.getProperty(PENDING_UPDATE_VERSION_KEY);
+            if (pendingUpdateVersion != null) {
+                // An update was staged during a previous boot and, being the most recent file, has now been picked up
+                if (pendingUpdateVersion.equals(currentMeta.getVersion().getVersion())) {
+                    LOGGER.info("Applied {} update to version {} which was downloaded in the background", mod, pendingUpdateVersion);
+                    String replacedFileName = mod.config.getProperty(PENDING_UPDATE_REPLACES_KEY);
+                    if (replacedFileName != null) {
+                        mod.deleteReplacedFile(mod.dataDir.resolve(replacedFileName), essentialFile);
+                    }
+                } else {
+                    LOGGER.debug("Pending {} update to version {} was not applied, currently at {}",
+                        mod, pendingUpdateVersion, currentMeta.getVersion().getVersion());
                 }
             }
+            if (pendingUpdateVersion != null
+                || mod.config.getProperty(PENDING_UPDATE_RESOLUTION_KEY) != null
+                || mod.config.getProperty(PENDING_UPDATE_REPLACES_KEY) != null
+                || mod.config.getProperty(OVERRIDE_PINNED_VERSION_KEY) != null) {
+                mod.config.remove(PENDING_UPDATE_VERSION_KEY);
+                mod.config.remove(PENDING_UPDATE_RESOLUTION_KEY);
+                mod.config.remove(PENDING_UPDATE_REPLACES_KEY);
+                mod.config.remove(OVERRIDE_PINNED_VERSION_KEY);
+                mod.writeConfigFile();
+            }
+
+            startBackgroundUpdate(mod, essentialFile, currentMeta);
+        }
+
+        if (prefetchedFileObsolete) {
+            Files.deleteIfExists(mod.prefetchedFile());
         }
 
-        if (mod.autoUpdate != AutoUpdate.Manual) {
+        if (mod.autoUpdate != AutoUpdate.Manual && mod.autoUpdate != AutoUpdate.Background) {
             // Clean up pending update properties if we are no longer in Manual update mode
             if (mod.config.getProperty(PENDING_UPDATE_VERSION_KEY) != null
                 || mod.config.getProperty(PENDING_UPDATE_RESOLUTION_KEY) != null
+                || mod.config.getProperty(PENDING_UPDATE_REPLACES_KEY) != null
                 || mod.config.getProperty(OVERRIDE_PINNED_VERSION_KEY) != null) {
                 mod.config.remove(PENDING_UPDATE_VERSION_KEY);
                 mod.config.remove(PENDING_UPDATE_RESOLUTION_KEY);
+                mod.config.remove(PENDING_UPDATE_REPLACES_KEY);
                 mod.config.remove(OVERRIDE_PINNED_VERSION_KEY);
                 mod.writeConfigFile();
             }
@@ -387,8 +766,109 @@ public abstract class EssentialLoaderBase {
             return null;
         }
 
+        // All remaining checks share a single inspection of the jar, and on subsequent boots most of them won't even
+        // need to open it
+        try (JarInspection jar = inspect(essentialFile, currentMeta.getChecksum())) {
+            return loadMod(mod, jar, currentMeta);
+        }
+    }
+
+    /**
+     * Starts checking for (and downloading) a newer version of the given mod on a daemon thread, so the game does not
+     * have to wait for the network. The result is only staged, it'll be picked up on the next boot.
+     * Only does anything once per mod in a given JVM, so we do not start a second check if the game is re-launched.
+     */
+    private void startBackgroundUpdate(Mod mod, Path essentialFile, ModJarMetadata currentMeta) {
+        String startedKey = "essential.loader.backgroundUpdate." + mod.safeSlug();
+        if (Boolean.getBoolean(startedKey)) {
+            return;
+        }
+        System.setProperty(startedKey, "true");
+
+        Thread thread = new Thread(() -> {
+            try {
+                backgroundUpdate(mod, essentialFile, currentMeta);
+            } catch (Throwable t) {
+                LOGGER.error("Error while updating " + mod + " in the background:", t);
+            }
+        }, "Essential Background Update (" + mod.safeSlug() + ")");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void backgroundUpdate(Mod mod, Path essentialFile, ModJarMetadata currentMeta) throws IOException {
+        ModJarMetadata latestMeta = resolveLatestVersion(mod);
+        if (latestMeta == null || checksumCache.matches(essentialFile, currentMeta.getChecksum(), latestMeta.getChecksum())) {
+            return; // nothing to update to
+        }
+
+        LOGGER.info("Found newer {} version {} [{}], downloading it in the background", mod, latestMeta.getVersion().getVersion(), mod.branch);
+        // The boot thread may be using the UI at the same time, and there is nothing to show anyway
+        Path downloadedFile = update(mod, essentialFile, currentMeta, latestMeta, LoaderUI.none());
+        if (downloadedFile == null) {
+            return; // will try again next boot
+        }
+
+        // The current file is in use, so rather than replacing it, we stage the update as the next most recent file,
+        // which the next boot will pick up on its own.
+        Path stagedFile = findNextMostRecentFile(mod.dataDir, mod.fileBaseName, FILE_EXTENSION);
+        Files.deleteIfExists(ModJarMetadata.metaFilePath(stagedFile));
+        latestMeta.writeToMetaFile(stagedFile);
+        blobStore.install(downloadedFile, stagedFile, latestMeta.getChecksum());
+
+        mod.config.setProperty(PENDING_UPDATE_VERSION_KEY, latestMeta.getVersion().getVersion());
+        mod.config.setProperty(PENDING_UPDATE_REPLACES_KEY, essentialFile.getFileName().toString());
+        mod.writeConfigFile();
+
+        LOGGER.info("Staged {} version {} at {}, it will be used on next boot", mod, latestMeta.getVersion().getVersion(), stagedFile);
+    }
+
+    /**
+     * Downloads the pending update of the given mod (and applies it, if we got a diff) to a verified jar next to the
+     * current one, so if the user accepts the update, installing it on the next boot is merely a matter of moving that
+     * file into place.
+     * Meant to be called (reflectively) by the mod while the game is running, e.g. when it shows its update prompt.
+     * The download runs on a daemon thread, the returned future completes with whether the update is now ready.
+     * Completes with {@code false} right away if the given mod has no pending update which could be prefetched.
+     */
+    public static CompletableFuture<Boolean> prefetchPendingUpdate(String slug) {
+        PendingUpdate pendingUpdate = PREFETCHABLE_UPDATES.get(slug);
+        if (pendingUpdate == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return pendingUpdate.prefetch();
+    }
+
+    private boolean prefetch(Mod mod, Path essentialFile, ModJarMetadata currentMeta, ModJarMetadata pendingMeta) throws IOException {
+        LOGGER.info("Prefetching {} version {}", mod, pendingMeta.getVersion().getVersion());
+        // Runs while the game is running, the loading screen is long gone
+        Path downloadedFile = update(mod, essentialFile, currentMeta, pendingMeta, LoaderUI.none());
+        if (downloadedFile == null) {
+            return false;
+        }
+
+        Path prefetchedFile = mod.prefetchedFile();
+        if (downloadedFile.equals(prefetchedFile) || downloadedFile.equals(blobStore.find(pendingMeta.getChecksum()))) {
+            return true; // already where the next boot will look for it
+        }
+        Files.move(downloadedFile, prefetchedFile, REPLACE_EXISTING);
+
+        // Verify it once more now, so the next boot can simply look its checksum up in the cache
+        if (!Objects.equals(pendingMeta.getChecksum(), checksumCache.getChecksum(prefetchedFile, pendingMeta.getChecksum()))) {
+            LOGGER.warn("Prefetched {} file at {} does not match the expected checksum", mod, prefetchedFile);
+            Files.delete(prefetchedFile);
+            return false;
+        }
+        LOGGER.info("Prefetched {} version {} to {}", mod, pendingMeta.getVersion().getVersion(), prefetchedFile);
+        return true;
+    }
+
+    private ModJarMetadata loadMod(Mod mod, JarInspection jar, ModJarMetadata currentMeta) throws IOException {
+        Path essentialFile = jar.getPath();
+
         // Check if the current stage2 meets the requirements of the mod
-        String requiredStage2Version = getRequiredStage2VersionIfOutdated(essentialFile);
+        String requiredStage2Version = getRequiredStage2VersionIfOutdated(jar);
         if (requiredStage2Version != null) {
             // Find the stage1 config file
             Path jarFile;
@@ -418,7 +898,11 @@ public abstract class EssentialLoaderBase {
             throw new AssertionError("JVM should have exited by now");
         }
 
-        this.addToClasspath(mod, currentMeta, essentialFile, this.extractJarsInJar(mod, essentialFile));
+        long start = System.nanoTime();
+        List<Path> innerJars = this.extractJarsInJar(mod, jar, currentMeta.getChecksum());
+        BootTimings.record("stage2.extractJars", start);
+
+        this.addToClasspath(mod, currentMeta, essentialFile, innerJars);
 
         return currentMeta;
     }
@@ -491,25 +975,46 @@ public abstract class EssentialLoaderBase {
         }
     }
 
-    private Path update(Mod mod, Path essentialFile, ModJarMetadata currentMeta, ModJarMetadata latestMeta) throws IOException {
+    private Path update(Mod mod, Path essentialFile, ModJarMetadata currentMeta, ModJarMetadata latestMeta, LoaderUI ui) throws IOException {
+        // Another mod or game instance sharing our blob store may already have the exact file we need
+        Path storedFile = blobStore.find(latestMeta.getChecksum());
+        if (storedFile != null) {
+            if (Objects.equals(latestMeta.getChecksum(), checksumCache.getChecksum(storedFile, latestMeta.getChecksum()))) {
+                LOGGER.debug("Found {} in blob store at {}", latestMeta.getChecksum(), storedFile);
+                return storedFile;
+            }
+            LOGGER.warn("Ignoring {} in blob store, it does not match the expected checksum", storedFile);
+        }
+
+        // The mod may have prefetched exactly this update while the game was running
+        Path prefetchedFile = mod.prefetchedFile();
+        if (Files.exists(prefetchedFile)) {
+            if (Objects.equals(latestMeta.getChecksum(), checksumCache.getChecksum(prefetchedFile, latestMeta.getChecksum()))) {
+                LOGGER.debug("Found prefetched {} at {}", latestMeta.getChecksum(), prefetchedFile);
+                return prefetchedFile;
+            }
+            LOGGER.debug("Deleting outdated prefetched file {}", prefetchedFile);
+            Files.delete(prefetchedFile);
+        }
+
         // If we can, try fetching a diff first
         if (!currentMeta.getVersion().isUnknown()) {
-            Path updatedFile = updateViaDiff(mod, essentialFile, currentMeta, latestMeta);
+            Path updatedFile = updateViaDiff(mod, essentialFile, currentMeta, latestMeta, ui);
             if (updatedFile != null) {
                 return updatedFile;
             }
         }
 
         // Otherwise fall back to downloading the full file
-        Path downloadedFile = updateViaDownload(mod, latestMeta);
+        Path downloadedFile = updateViaDownload(mod, latestMeta, ui);
         if (downloadedFile == null) {
             LOGGER.warn("Unable to download {}, please check your internet connection. If the problem persists, please contact Essential Support.", mod);
         }
         return downloadedFile;
     }
 
-    private Path updateViaDiff(Mod mod, Path essentialFile, ModJarMetadata currentMeta, ModJarMetadata latestMeta) throws IOException {
-        if (!Objects.equals(currentMeta.getChecksum(), Checksum.getChecksum(essentialFile))) {
+    private Path updateViaDiff(Mod mod, Path essentialFile, ModJarMetadata currentMeta, ModJarMetadata latestMeta, LoaderUI ui) throws IOException {
+        if (!Objects.equals(currentMeta.getChecksum(), checksumCache.getChecksum(essentialFile, currentMeta.getChecksum()))) {
             return null; // current file has unexpected hash (either corrupted, or from old stage2 version)
         }
 
@@ -519,18 +1024,19 @@ public abstract class EssentialLoaderBase {
         }
 
         Path downloadedFile = Files.createTempFile("essential-download-", "");
-        if (!downloadFile(mod, meta.url, downloadedFile, meta.checksum)) {
+        if (!downloadFile(mod, meta.url, downloadedFile, meta.checksum, ui)) {
             return null; // failed to download diff
         }
 
         Path patchedFile = Files.createTempFile("essential-patched-", "");
-        Files.copy(essentialFile, patchedFile, REPLACE_EXISTING);
         try {
-            DiffPatcher.apply(patchedFile, downloadedFile);
+            long start = System.nanoTime();
+            DiffPatcher.apply(essentialFile, downloadedFile, patchedFile);
+            BootTimings.record("stage2.applyDiff", start);
             Files.delete(downloadedFile);
 
             String expected = latestMeta.getChecksum();
-            String actual = getChecksum(patchedFile);
+            String actual = getChecksum(patchedFile, expected);
             if (!Objects.equals(expected, actual)) {
                 throw new IOException("Excepted checksum of result to be " + expected + " but was " + actual);
             }
@@ -544,39 +1050,27 @@ public abstract class EssentialLoaderBase {
         return patchedFile; // success
     }
 
-    private Path updateViaDownload(Mod mod, ModJarMetadata latestMeta) throws IOException {
+    private Path updateViaDownload(Mod mod, ModJarMetadata latestMeta, LoaderUI ui) throws IOException {
         FileMeta meta = fetchDownloadUrl(latestMeta.getMod(), latestMeta.getVersion());
         if (meta == null) {
             return null; // no download available, this is bad
         }
 
-        Path downloadedFile = Files.createTempFile("essential-download-", "");
-        if (!downloadFile(mod, meta.url, downloadedFile, meta.checksum)) {
+        // Full downloads are large, so we download them to a part file in the data dir which we can resume from if the
+        // download fails half way through (or the game is closed while we are downloading).
+        PartialDownload download = new PartialDownload(mod.dataDir.resolve(mod.fileBaseName + PART_FILE_SUFFIX), meta.checksum);
+        if (!downloadFileResumable(mod, meta.url, download, ui)) {
             return null; // failed to download file
         }
 
-        return downloadedFile; // success
+        return download.getFile(); // success
     }
 
     private JsonObject fetchJsonObject(String endpoint, boolean allowEmpty) {
         URLConnection connection = null;
         try {
             connection = this.prepareConnection(new URL(endpoint));
-
-            String response;
-            try (final InputStream inputStream = connection.getInputStream()) {
-                response = IOUtils.toString(inputStream, Charset.defaultCharset());
-            }
-
-            JsonElement jsonElement = new JsonParser().parse(response);
-            if (!jsonElement.isJsonObject()) {
-                if (allowEmpty && jsonElement.isJsonNull()) {
-                    return new JsonObject();
-                } else {
-                    throw new IOException("Excepted json object, got " + response);
-                }
-            }
-            return jsonElement.getAsJsonObject();
+            return readJsonObject(connection, allowEmpty);
         } catch (final IOException | JsonParseException e) {
             LOGGER.error("Error occurred fetching " + endpoint + ": ", e);
             logConnectionInfoOnError(connection);
@@ -584,9 +1078,40 @@ public abstract class EssentialLoaderBase {
         }
     }
 
+    private JsonObject readJsonObject(URLConnection connection, boolean allowEmpty) throws IOException {
+        long start = System.nanoTime();
+        String response;
+        try {
+            response = this.httpCache.read(connection);
+        } finally {
+            BootTimings.record("stage2.fetchMetadata", start);
+        }
+
+        JsonElement jsonElement = new JsonParser().parse(response);
+        if (!jsonElement.isJsonObject()) {
+            if (allowEmpty && jsonElement.isJsonNull()) {
+                return new JsonObject();
+            } else {
+                throw new IOException("Excepted json object, got " + response);
+            }
+        }
+        return jsonElement.getAsJsonObject();
+    }
+
+    private ModJarMetadata resolveLatestVersion(Mod mod) {
+        Future<ModJarMetadata> resolved = resolvedLatestVersions.get(mod);
+        if (resolved != null) {
+            return await(resolved);
+        }
+        return fetchLatestVersion(mod, mod.branch);
+    }
+
     private ModJarMetadata fetchLatestVersion(Mod mod, String branch) {
         JsonObject responseObject = fetchJsonObject(String.format(VERSION_URL, mod.id.getFullSlug(), branch, this.apiGameVersion), true);
+        return parseLatestVersion(mod, responseObject);
+    }
 
+    private ModJarMetadata parseLatestVersion(Mod mod, JsonObject responseObject) {
         if (responseObject == null) {
             LOGGER.warn("{} does not support the following game version: {}", mod, this.gameVersion);
             return null;
@@ -607,17 +1132,36 @@ public abstract class EssentialLoaderBase {
         return new ModJarMetadata(mod.id, new ModVersion(id, version), this.apiGameVersion, checksum);
     }
 
+    private String downloadEndpoint(ModId modId, ModVersion modVersion) {
+        return String.format(DOWNLOAD_URL, modId.getFullSlug(), modVersion.getVersion(), this.apiGameVersion);
+    }
+
+    private String diffEndpoint(ModId modId, ModVersion oldVersion, ModVersion modVersion) {
+        return String.format(DIFF_URL, modId.getFullSlug(), oldVersion.getVersion(), modVersion.getVersion(), this.apiGameVersion);
+    }
+
     private FileMeta fetchDownloadUrl(ModId modId, ModVersion modVersion) {
-        return fetchFileMeta(String.format(DOWNLOAD_URL, modId.getFullSlug(), modVersion.getVersion(), this.apiGameVersion));
+        return resolveFileMeta(downloadEndpoint(modId, modVersion));
     }
 
     private FileMeta fetchDiffUrl(ModId modId, ModVersion oldVersion, ModVersion modVersion) {
-        return fetchFileMeta(String.format(DIFF_URL, modId.getFullSlug(), oldVersion.getVersion(), modVersion.getVersion(), this.apiGameVersion));
+        return resolveFileMeta(diffEndpoint(modId, oldVersion, modVersion));
+    }
+
+    private FileMeta resolveFileMeta(String endpoint) {
+        Future<FileMeta> resolved = resolvedFileMetas.remove(endpoint);
+        if (resolved != null) {
+            return await(resolved);
+        }
+        return fetchFileMeta(endpoint);
     }
 
     private FileMeta fetchFileMeta(String endpoint) {
         JsonObject responseObject = fetchJsonObject(endpoint, false);
+        return parseFileMeta(responseObject);
+    }
 
+    private FileMeta parseFileMeta(JsonObject responseObject) {
         if (responseObject == null) {
             return null;
         }
@@ -660,23 +1204,15 @@ public abstract class EssentialLoaderBase {
         return urlConnection;
     }
 
-    private String getRequiredStage2VersionIfOutdated(Path modFile) {
+    private String getRequiredStage2VersionIfOutdated(JarInspection modJar) {
         // If we don't know our own version, then stage1 predates pinning, so it'll always auto-update and we're always
         // up-to-date enough for all mods (assuming the stage2 update is released before mods that require it).
         if (currentStage2Version == null) {
             return null;
         }
 
-        try (FileSystem fileSystem = FileSystems.newFileSystem(modFile, (ClassLoader) null)) {
-            Path manifestPath = fileSystem.getPath("META-INF", "MANIFEST.MF");
-            if (!Files.exists(manifestPath)) {
-                return null; // no requirement, good to go
-            }
-            Manifest manifest = new Manifest();
-            try (InputStream in = Files.newInputStream(manifestPath)) {
-                manifest.read(in);
-            }
-            String requiredVersion = manifest.getMainAttributes().getValue(new Attributes.Name("Requires-Essential-Stage2-Version"));
+        try {
+            String requiredVersion = modJar.getManifestAttributes().getValue(new Attributes.Name("Requires-Essential-Stage2-Version"));
             if (requiredVersion == null) {
                 return null; // no requirement, good to go
             }
@@ -686,55 +1222,130 @@ public abstract class EssentialLoaderBase {
                 return requiredVersion; // need to update
             }
         } catch (IOException e) {
-            LOGGER.warn("Failed to read mod metadata from jar file at " + modFile + ":", e);
+            LOGGER.warn("Failed to read mod metadata from jar file at " + modJar.getPath() + ":", e);
             return null; // assume it's good enough, nothing else we can really do
         }
     }
 
+    /**
+     * Creates a new inspection of the given jar, persisting its answers under the given key (if not {@code null}).
+     */
+    protected JarInspection inspect(Path jar, @Nullable String key) {
+        return new JarInspection(jar, jarInspectionCacheDir, key);
+    }
+
     protected Path getExtractedJarsRoot(Mod mod) {
         return mod.dataDir
             .resolve("libraries")
             .resolve(gameVersion);
     }
 
-    private List<Path> extractJarsInJar(Mod mod, Path outerJar) throws IOException {
+    private List<Path> extractJarsInJar(Mod mod, JarInspection outerJar, String outerChecksum) throws IOException {
         final Path extractedJarsRoot = getExtractedJarsRoot(mod);
         Files.createDirectories(extractedJarsRoot);
 
+        // If we've already extracted this exact jar before, we do not even need to open it
+        final ExtractedJarsIndex index = new ExtractedJarsIndex(extractedJarsRoot);
+        final List<Path> indexedJars = index.lookup(outerChecksum);
+        if (indexedJars != null) {
+            LOGGER.debug("All jars in {} already extracted", outerJar.getPath());
+            return indexedJars;
+        }
+
         final List<Path> extractedJars = new ArrayList<>();
+        final List<String> extractedHashes = new ArrayList<>();
+
+        // FIXME: For third-party mods we must not simply extract everything in this directory, fabric's JiJ may or
+        //        may not use it as well and we should be handling both cases correctly
+        final String innerJarsRoot = "META-INF/jars/";
+        final ZipFile zipFile = outerJar.getZipFile();
+        final List<ZipEntry> innerJars = zipFile.stream()
+            .filter(entry -> !entry.isDirectory())
+            .filter(entry -> entry.getName().startsWith(innerJarsRoot) && entry.getName().indexOf('/', innerJarsRoot.length()) == -1)
+            .collect(Collectors.toList());
+        for (ZipEntry innerJar : innerJars) {
+            String innerJarName = innerJar.getName().substring(innerJarsRoot.length());
+            Path blob = addToBlobStore(zipFile, innerJar);
+            String hash;
+            if (blob != null) {
+                hash = blob.getFileName().toString();
+            } else {
+                try (InputStream in = zipFile.getInputStream(innerJar)) {
+                    hash = DigestUtils.sha256Hex(in);
+                }
+            }
 
-        try (FileSystem fileSystem = FileSystems.newFileSystem(outerJar, (ClassLoader) null)) {
-            // FIXME: For third-party mods we must not simply extract everything in this directory, fabric's JiJ may or
-            //        may not use it as well and we should be handling both cases correctly
-            final Path innerJarsRoot = fileSystem.getPath("META-INF", "jars");
-            if (!Files.isDirectory(innerJarsRoot)) {
-                return extractedJars;
-            }
-            List<Path> innerJars;
-            try (Stream<Path> stream = Files.list(innerJarsRoot)) {
-                innerJars = stream.collect(Collectors.toList());
-            }
-            for (Path innerJar : innerJars) {
-                // For now, we'll assume that the file name is sufficiently unique of an identifier
-                final Path extractedJar = extractedJarsRoot.resolve(innerJar.getFileName().toString());
-                if (Files.exists(extractedJar)) {
+            // For now, we'll assume that the file name is sufficiently unique of an identifier
+            Path extractedJar = extractedJarsRoot.resolve(innerJarName);
+            if (Files.exists(extractedJar)) {
+                if (hash.equals(index.getHash(extractedJar))) {
                     LOGGER.debug("Already extracted: {}", innerJar);
+                    extractedJars.add(extractedJar);
+                    extractedHashes.add(hash);
+                    continue;
+                }
+                if (index.contains(extractedJar)) {
+                    LOGGER.warn("Found outdated or corrupted {}, extracting again", extractedJar);
                 } else {
-                    LOGGER.debug("Extracting {} to {}", innerJar, extractedJar);
-                    // Copy to tmp jar first, so we do not leave behind incomplete jars
-                    final Path tmpJar = Files.createTempFile(extractedJarsRoot, "tmp", ".jar");
-                    Files.copy(innerJar, tmpJar, REPLACE_EXISTING);
-                    // Then (if successful) perform an atomic rename
-                    Files.move(tmpJar, extractedJar, StandardCopyOption.ATOMIC_MOVE);
+                    // Not yet indexed (e.g. extracted by an older loader), so most likely simply outdated
+                    LOGGER.debug("Found outdated {}, extracting again", extractedJar);
+                }
+                try {
+                    Files.delete(extractedJar);
+                } catch (IOException e) {
+                    // Likely still in use by another instance, so we'll use a separate file instead
+                    LOGGER.warn("Failed to delete " + extractedJar + ":", e);
+                    extractedJar = extractedJarsRoot.resolve(hash.substring(0, 8)).resolve(innerJarName);
+                    Files.createDirectories(extractedJar.getParent());
+                    Files.deleteIfExists(extractedJar);
                 }
-                // Store the extracted path for later
-                extractedJars.add(extractedJar);
             }
+
+            if (blob != null && linkFromBlobStore(blob, extractedJar)) {
+                LOGGER.debug("Linked {} to {}", innerJar, extractedJar);
+            } else {
+                LOGGER.debug("Extracting {} to {}", innerJar, extractedJar);
+                // Copy to tmp jar first, so we do not leave behind incomplete jars
+                final Path tmpJar = Files.createTempFile(extractedJar.getParent(), "tmp", ".jar");
+                try (InputStream in = zipFile.getInputStream(innerJar)) {
+                    Files.copy(in, tmpJar, REPLACE_EXISTING);
+                }
+                // Then (if successful) perform an atomic rename
+                Files.move(tmpJar, extractedJar, StandardCopyOption.ATOMIC_MOVE);
+            }
+            // Store the extracted path for later
+            extractedJars.add(extractedJar);
+            extractedHashes.add(hash);
         }
 
+        index.store(outerChecksum, extractedJars, extractedHashes);
         return extractedJars;
     }
 
+    /**
+     * Adds the given inner jar to the blob store, so identical libraries shared between mods and game versions only
+     * need to be written to disk once.
+     * Returns {@code null} if that is not possible, in which case the jar should be extracted directly.
+     */
+    private Path addToBlobStore(ZipFile zipFile, ZipEntry innerJar) {
+        try {
+            return blobStore.add(() -> zipFile.getInputStream(innerJar));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to add " + innerJar + " to blob store:", e);
+            return null;
+        }
+    }
+
+    private boolean linkFromBlobStore(Path blob, Path extractedJar) {
+        try {
+            blobStore.link(blob, extractedJar);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to link " + extractedJar + " from blob store:", e);
+            return false;
+        }
+    }
+
     protected abstract void loadPlatform();
 
     @Nullable
@@ -765,10 +1376,16 @@ public abstract class EssentialLoaderBase {
     }
 
     public final void initialize() {
-        if (!isInClassPath()) {
-            return;
+        long start = System.nanoTime();
+        try {
+            if (!isInClassPath()) {
+                return;
+            }
+            doInitialize();
+        } finally {
+            BootTimings.record("stage2.initialize", start);
+            BootTimings.report(gameDir.resolve("essential"));
         }
-        doInitialize();
     }
 
     protected void doInitialize() {
@@ -789,8 +1406,11 @@ public abstract class EssentialLoaderBase {
         return new URI("jar:" + uri.getScheme(), uri.getHost(), uri.getPath(), uri.getFragment());
     }
 
-    private boolean downloadFile(final Mod mod, final URL url, final Path target, String expectedHash) throws IOException {
-        if (!this.attemptDownload(url, target)) {
+    private boolean downloadFile(final Mod mod, final URL url, final Path target, String expectedHash, final LoaderUI ui) throws IOException {
+        final long start = System.nanoTime();
+        final String downloadedChecksum = this.attemptDownload(url, target, expectedHash, null, ui);
+        BootTimings.record("stage2.download", start);
+        if (downloadedChecksum == null) {
             LOGGER.warn("Unable to download {}, please check your internet connection. If the problem persists, please contact Essential Support.", mod);
 
             // Do not keep the file they downloaded if the download failed half way through
@@ -799,8 +1419,6 @@ public abstract class EssentialLoaderBase {
             return false;
         }
 
-        final String downloadedChecksum = getChecksum(target);
-
         if (downloadedChecksum.equals(expectedHash)) {
             return true;
         }
@@ -816,41 +1434,209 @@ public abstract class EssentialLoaderBase {
         return false;
     }
 
-    private boolean attemptDownload(final URL url, final Path target) {
+    /**
+     * Like {@link #downloadFile(Mod, URL, Path, String, LoaderUI)} but keeps whatever was downloaded if the download fails, so a
+     * later attempt (in this boot or the next one) can continue where it left off.
+     */
+    private boolean downloadFileResumable(final Mod mod, final URL url, final PartialDownload download, final LoaderUI ui) throws IOException {
+        String downloadedChecksum = null;
+        for (int attempt = 0; attempt < RESUME_ATTEMPTS && downloadedChecksum == null; attempt++) {
+            long resumeFrom = download.prepare();
+            long start = System.nanoTime();
+            downloadedChecksum = this.attemptDownload(url, download.getFile(), download.getChecksum(), download, ui);
+            BootTimings.record("stage2.download", start);
+            long size = Files.exists(download.getFile()) ? Files.size(download.getFile()) : 0;
+            if (downloadedChecksum == null && size == resumeFrom) {
+                break; // no progress at all, likely no connection, no point in trying again right away
+            }
+        }
+
+        if (downloadedChecksum == null) {
+            LOGGER.warn("Unable to download {}, please check your internet connection. If the problem persists, please contact Essential Support.", mod);
+            return false;
+        }
+
+        if (downloadedChecksum.equals(download.getChecksum())) {
+            download.complete();
+            return true;
+        }
+
+        LOGGER.warn(
+            "Downloaded {} file checksum did not match what we expected (downloaded={}, expected={}",
+            mod, downloadedChecksum, download.getChecksum()
+        );
+
+        // Do not keep the file they downloaded if validation failed, and definitely do not resume from it.
+        download.discard();
+
+        return false;
+    }
+
+    /**
+     * Downloads the given url to the given target file, computing the file's checksum as it is being written.
+     * If a partial download is given, any data it already contains is kept and only the remainder is requested from the
+     * server (if the server does not support that, the download starts from zero).
+     *
+     * The checksum is computed with the same algorithm as the expected checksum.
+     * Progress is reported to the given UI.
+     *
+     * @return the checksum of the downloaded file, or {@code null} if the download failed
+     */
+    private String attemptDownload(final URL url, final Path target, final String expectedChecksum, @Nullable final PartialDownload partial, final LoaderUI ui) {
         URLConnection connection = null;
         try {
+            long offset = partial != null && Files.exists(target) ? Files.size(target) : 0;
+            long knownLength = partial != null ? partial.getLength() : -1;
+            final MessageDigest digest = Checksum.newDigest(expectedChecksum);
+
+            if (offset > 0 && offset == knownLength) {
+                LOGGER.info("Found fully downloaded part file at {}, verifying it.", target);
+                partial.digestExisting(offset, digest);
+                return Checksum.toChecksum(digest);
+            }
+
             connection = this.prepareConnection(url);
-            final int contentLength = connection.getContentLength();
-            this.ui.setDownloadSize(contentLength);
+            // When starting from zero, we still request a range, so we can tell from the response whether the server
+            // supports ranges, in which case we may download it in multiple segments concurrently.
+            boolean trySegmented = offset == 0 && DOWNLOAD_SEGMENTS > 1 && connection instanceof HttpURLConnection;
+            if (offset > 0 || trySegmented) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                int responseCode = connection instanceof HttpURLConnection ? ((HttpURLConnection) connection).getResponseCode() : -1;
+                if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                    LOGGER.warn("Server rejected request to resume download of {} at {} bytes, starting from zero.", url, offset);
+                    if (partial != null) {
+                        partial.discard();
+                    }
+                    return null;
+                } else if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    long totalLength = SegmentedDownload.parseTotalLength(connection.getHeaderField("Content-Range"));
+                    if (offset == 0 && totalLength >= DOWNLOAD_SEGMENTED_MIN_SIZE) {
+                        String checksum = this.attemptSegmentedDownload(url, (HttpURLConnection) connection, target, expectedChecksum, partial, totalLength, ui);
+                        if (checksum != null) {
+                            return checksum;
+                        }
+                        LOGGER.warn("Segmented download of {} failed, falling back to a single stream.", url);
+                        connection = this.prepareConnection(url);
+                    } else if (offset > 0) {
+                        LOGGER.info("Resuming download of {} at {} bytes.", url, offset);
+                        partial.digestExisting(offset, digest);
+                    }
+                } else if (offset > 0) {
+                    LOGGER.info("Server does not support resuming download of {}, starting from zero.", url);
+                    offset = 0;
+                }
+            }
+            final long resumedFrom = offset;
+
+            final long contentLength = connection.getContentLengthLong();
+            final long totalLength = contentLength >= 0 ? resumedFrom + contentLength : -1;
+            if (partial != null && totalLength >= 0) {
+                partial.setLength(totalLength);
+            }
+            ui.setDownloadSize((int) totalLength);
+            ui.setDownloaded((int) resumedFrom);
 
             final long startTime = System.nanoTime();
 
-            int totalRead = 0;
             try (
                 final InputStream inputStream = connection.getInputStream();
-                final OutputStream fileOutputStream = Files.newOutputStream(target)
+                final FileChannel fileChannel = partial != null
+                    ? partial.openAt(resumedFrom)
+                    : FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)
             ) {
-                final byte[] buffer = new byte[1024];
-
-                int read;
-                while ((read = inputStream.read(buffer)) > 0) {
-                    fileOutputStream.write(buffer, 0, read);
-                    totalRead += read;
-                    this.ui.setDownloaded(totalRead);
-                }
+                long transferred = Transfer.copy(inputStream, fileChannel, contentLength, digest, totalRead -> ui.setDownloaded((int) (resumedFrom + totalRead)));
 
                 long endTime = System.nanoTime();
                 long millis = TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
-                System.setProperty("essential.stage2.downloaded.bytes", String.valueOf(contentLength));
+                System.setProperty("essential.stage2.downloaded.bytes", String.valueOf(transferred));
                 System.setProperty("essential.stage2.downloaded.millis", String.valueOf(millis));
+                if (resumedFrom > 0) {
+                    System.setProperty("essential.stage2.downloaded.resumedFrom", String.valueOf(resumedFrom));
+                }
 
-                return true;
+                return Checksum.toChecksum(digest);
             }
         } catch (final IOException e) {
             LOGGER.error("Error occurred when downloading file '{}'.", url, e);
             logConnectionInfoOnError(connection);
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the given url in {@link #DOWNLOAD_SEGMENTS} byte ranges concurrently, using the given connection (which
+     * must be a `206 Partial Content` response starting at byte 0) for the first one.
+     *
+     * @return the checksum of the downloaded file, or {@code null} if the download failed
+     */
+    private String attemptSegmentedDownload(
+        final URL url,
+        final HttpURLConnection connection,
+        final Path target,
+        final String expectedChecksum,
+        @Nullable final PartialDownload partial,
+        final long totalLength,
+        final LoaderUI ui
+    ) throws IOException {
+        // The part file will have holes in it until all segments are done, so it must not be resumed from until then
+        if (partial != null) {
+            partial.beginSegmented();
+        }
+        ui.setDownloadSize((int) totalLength);
+
+        final long startTime = System.nanoTime();
+
+        try (
+            final InputStream inputStream = connection.getInputStream();
+            final FileChannel fileChannel = partial != null
+                ? partial.openAt(0)
+                : FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)
+        ) {
+            SegmentedDownload.download(
+                inputStream,
+                (from, to) -> this.openRange(url, from, to),
+                fileChannel,
+                totalLength,
+                DOWNLOAD_SEGMENTS,
+                totalRead -> ui.setDownloaded((int) totalRead)
+            );
+        } catch (final IOException e) {
+            LOGGER.warn("Error occurred during segmented download of '{}':", url, e);
+            // The file has holes in it, so it cannot be resumed from
+            if (partial != null) {
+                partial.discard();
+                partial.prepare();
+            }
+            return null;
+        } finally {
+            connection.disconnect();
+        }
+
+        if (partial != null) {
+            partial.setLength(totalLength);
+        }
+
+        // The ranges arrived out of order, so we could not digest them as they were written
+        final String checksum = getChecksum(target, expectedChecksum);
+
+        long endTime = System.nanoTime();
+        long millis = TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
+        System.setProperty("essential.stage2.downloaded.bytes", String.valueOf(totalLength));
+        System.setProperty("essential.stage2.downloaded.millis", String.valueOf(millis));
+        System.setProperty("essential.stage2.downloaded.segments", String.valueOf(DOWNLOAD_SEGMENTS));
+
+        return checksum;
+    }
+
+    private InputStream openRange(final URL url, final long from, final long to) throws IOException {
+        final URLConnection connection = this.prepareConnection(url);
+        connection.setRequestProperty("Range", "bytes=" + from + "-" + to);
+        final int responseCode = ((HttpURLConnection) connection).getResponseCode();
+        final String contentRange = connection.getHeaderField("Content-Range");
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL || contentRange == null || !contentRange.startsWith("bytes " + from + "-" + to + "/")) {
+            throw new IOException("Server did not respond with bytes " + from + "-" + to + " of " + url + " (" + responseCode + ", " + contentRange + ")");
         }
+        return connection.getInputStream();
     }
 
     private void logConnectionInfoOnError(URLConnection connection) {
@@ -919,6 +1705,42 @@ public abstract class EssentialLoaderBase {
         }
     }
 
+    private class PendingUpdate {
+        private final Mod mod;
+        private final Path essentialFile;
+        private final ModJarMetadata currentMeta;
+        private final ModJarMetadata pendingMeta;
+        private CompletableFuture<Boolean> prefetched;
+
+        PendingUpdate(Mod mod, Path essentialFile, ModJarMetadata currentMeta, ModJarMetadata pendingMeta) {
+            this.mod = mod;
+            this.essentialFile = essentialFile;
+            this.currentMeta = currentMeta;
+            this.pendingMeta = pendingMeta;
+        }
+
+        synchronized CompletableFuture<Boolean> prefetch() {
+            // Only ever prefetch once, unless the previous attempt failed
+            if (prefetched != null && !(prefetched.isDone() && !prefetched.join())) {
+                return prefetched;
+            }
+
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    future.complete(EssentialLoaderBase.this.prefetch(mod, essentialFile, currentMeta, pendingMeta));
+                } catch (Throwable t) {
+                    LOGGER.error("Error while prefetching " + mod + " update:", t);
+                    future.complete(false);
+                }
+            }, "Essential Update Prefetch (" + mod.safeSlug() + ")");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+            return prefetched = future;
+        }
+    }
+
     private static class FileMeta {
         URL url;
         String checksum;
@@ -1015,11 +1837,35 @@ public abstract class EssentialLoaderBase {
             destinationFile = findNextMostRecentFile(dataDir, fileBaseName, FILE_EXTENSION);
 
             metadata.writeToMetaFile(destinationFile);
-            Files.move(sourceFile, destinationFile);
+            blobStore.install(sourceFile, destinationFile, metadata.getChecksum());
 
             return destinationFile;
         }
 
+        /**
+         * Deletes the file which a background update has superseded, unless it is (against all odds) still the current
+         * file. Failures are ignored, the file is simply left behind.
+         */
+        void deleteReplacedFile(Path replacedFile, Path currentFile) {
+            try {
+                if (Files.isSameFile(replacedFile, currentFile)) {
+                    return;
+                }
+            } catch (IOException ignored) {
+                // replaced file most likely does not exist any more
+            }
+            try {
+                Files.deleteIfExists(replacedFile);
+                Files.deleteIfExists(ModJarMetadata.metaFilePath(replacedFile));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete old " + this + " file " + replacedFile + ":", e);
+            }
+        }
+
+        Path prefetchedFile() {
+            return dataDir.resolve(fileBaseName + PREFETCHED_FILE_SUFFIX);
+        }
+
         Path installPinnedFile(Path destinationFile) throws IOException {
             URL url = pinnedFileUrl();
             if (url == null) {
@@ -1027,7 +1873,7 @@ public abstract class EssentialLoaderBase {
             }
 
             Path downloadedFile = Files.createTempFile("essential-extract-", "");
-            if (!downloadFile(this, url, downloadedFile, pinnedFileMd5)) {
+            if (!downloadFile(this, url, downloadedFile, pinnedFileMd5, ui)) {
                 return null;
             }
 
@@ -1055,9 +1901,12 @@ public abstract class EssentialLoaderBase {
         Manual,
         /** No network communication beyond initial download is performed. */
         Off,
+        /** Checks for and downloads newer versions without delaying the boot, they are installed on the next boot. */
+        Background,
         ;
 
         public static final String WITH_PROMPT = "with-prompt";
+        public static final String BACKGROUND = "background";
         public static final String KEY = "autoUpdate";
 
         private static AutoUpdate from(String value) {
@@ -1065,6 +1914,8 @@ public abstract class EssentialLoaderBase {
                 return Full;
             } else if (value.equalsIgnoreCase(WITH_PROMPT)) {
                 return Manual;
+            } else if (value.equalsIgnoreCase(BACKGROUND)) {
+                return Background;
             } else {
                 return Boolean.parseBoolean(value) ? Full : Off;
             }
@@ -1075,6 +1926,7 @@ public abstract class EssentialLoaderBase {
                 case Full: return "true";
                 case Manual: return WITH_PROMPT;
                 case Off: return "false";
+                case Background: return BACKGROUND;
             }
             throw new AssertionError();
         }
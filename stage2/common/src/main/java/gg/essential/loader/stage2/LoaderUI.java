@@ -6,6 +6,11 @@ public interface LoaderUI {
     void setDownloaded(int bytes);
     void complete();
 
+    /** A UI which does not show anything, for work which does not happen during boot. */
+    static LoaderUI none() {
+        return all();
+    }
+
     static LoaderUI all(final LoaderUI... uis) {
         return new LoaderUI() {
             @Override
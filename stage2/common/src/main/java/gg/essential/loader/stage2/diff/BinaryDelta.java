@@ -0,0 +1,108 @@
+package gg.essential.loader.stage2.diff;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Applies binary deltas, as found in the delta directory of diff files (see {@link DiffPatcher}), to the old content
+ * of an entry.
+ *
+ * The format is a simple copy/insert instruction stream, similar in spirit to VCDIFF (but without its secondary
+ * compression, the diff zip already deflates it for us):
+ * <pre>
+ * magic        4 bytes, "EDLT"
+ * version      1 byte, currently 1
+ * base crc     4 bytes, CRC-32 of the old content the delta applies to
+ * target crc   4 bytes, CRC-32 of the resulting content
+ * base size    varint
+ * target size  varint
+ * instructions until target size bytes have been produced, each one of
+ *   0x00 offset length   copy length bytes starting at offset from the old content
+ *   0x01 length bytes    insert the given bytes
+ * </pre>
+ * All varints are unsigned LEB128.
+ */
+public class BinaryDelta {
+    private static final int MAGIC = 0x45444c54; // EDLT
+    private static final int VERSION = 1;
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    public static byte[] apply(byte[] base, InputStream deltaStream) throws IOException {
+        DataInputStream delta = new DataInputStream(deltaStream);
+        if (delta.readInt() != MAGIC) {
+            throw new IOException("Not a binary delta");
+        }
+        int version = delta.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary delta version " + version);
+        }
+        long baseCrc = delta.readInt() & 0xFFFFFFFFL;
+        long targetCrc = delta.readInt() & 0xFFFFFFFFL;
+        long baseSize = readVarInt(delta);
+        long targetSize = readVarInt(delta);
+
+        if (base.length != baseSize || crc(base) != baseCrc) {
+            throw new IOException("Binary delta does not apply to the given content");
+        }
+        if (targetSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("Binary delta target too large: " + targetSize);
+        }
+
+        byte[] target = new byte[(int) targetSize];
+        int pos = 0;
+        while (pos < target.length) {
+            int op = delta.readUnsignedByte();
+            if (op == COPY) {
+                long offset = readVarInt(delta);
+                long length = readVarInt(delta);
+                if (offset > base.length || length > base.length - offset || length > target.length - pos) {
+                    throw new IOException("Binary delta copy out of bounds");
+                }
+                System.arraycopy(base, (int) offset, target, pos, (int) length);
+                pos += (int) length;
+            } else if (op == INSERT) {
+                long length = readVarInt(delta);
+                if (length > target.length - pos) {
+                    throw new IOException("Binary delta insert out of bounds");
+                }
+                delta.readFully(target, pos, (int) length);
+                pos += (int) length;
+            } else {
+                throw new IOException("Unknown binary delta instruction " + op);
+            }
+        }
+
+        if (delta.read() != -1) {
+            throw new IOException("Trailing data after binary delta");
+        }
+        if (crc(target) != targetCrc) {
+            throw new IOException("Binary delta produced unexpected content");
+        }
+        return target;
+    }
+
+    private static long readVarInt(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
@@ -2,22 +2,33 @@ package gg.essential.loader.stage2.diff;
 
 import gg.essential.loader.stage2.util.Delete;
 import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
@@ -28,13 +39,191 @@ import java.util.zip.ZipOutputStream;
  * - Files from the "+" directory are added to the target archive (overwriting any existing entries)
  * - Files from the "~" directory replace the corresponding entry in the target archive
  * - Files from the "-" directory are removed from the target archive
+ * - Files from the U+0394 (Greek capital delta) directory are binary deltas (see {@link BinaryDelta}) which are
+ *   applied to the corresponding entry of the original archive to produce its replacement
  *
  * The differences between "+" and "~" is purely for aesthetics, they are actually applied identically.
+ * Should the same entry be given in more than one of the delta, "~" and "+" directories, the latter one wins.
  */
 public class DiffPatcher {
-    public static void apply(Path targetFile, Path diffFile) throws IOException {
+    private static final Logger LOGGER = LogManager.getLogger(DiffPatcher.class);
+    private static final String DELTA_DIR = "\u0394";
+
+    /**
+     * Applies the given diff to the given source archive, writing the result to the given output file.
+     *
+     * This reads each archive only once and writes the result in one go, already sorted and with constant timestamps.
+     * Deflated entries of the source archive (i.e. all of them in any archive we produced) are copied verbatim, without
+     * inflating and deflating them again. Entries from the diff are always deflated anew, the same as they would be when
+     * copied into a zip {@link FileSystem}, so the result matches that of {@link #applyViaFileSystem(Path, Path)}.
+     */
+    public static void apply(Path sourceFile, Path diffFile, Path outputFile) throws IOException {
+        try (RawZipFile source = RawZipFile.open(sourceFile); RawZipFile diff = RawZipFile.open(diffFile)) {
+            TreeMap<String, Content> entries = new TreeMap<>();
+            for (RawZipFile.Entry entry : source.getEntries()) {
+                entries.put(entry.name, new Content(source, entry, true));
+            }
+
+            List<String> removed = new ArrayList<>();
+            Map<String, Content> added = new HashMap<>();
+            Map<String, RawZipFile.Entry> deltas = new HashMap<>();
+            for (RawZipFile.Entry entry : diff.getEntries()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (entry.name.startsWith(DELTA_DIR + "/")) {
+                    deltas.put(entry.name.substring(DELTA_DIR.length() + 1), entry);
+                } else if (entry.name.startsWith("-/")) {
+                    removed.add(entry.name.substring(2));
+                } else if (entry.name.startsWith("~/")) {
+                    added.putIfAbsent(entry.name.substring(2), new Content(diff, entry, false));
+                } else if (entry.name.startsWith("+/")) {
+                    added.put(entry.name.substring(2), new Content(diff, entry, false)); // "+" is applied after "~"
+                }
+            }
+
+            for (Map.Entry<String, RawZipFile.Entry> delta : deltas.entrySet()) {
+                String path = delta.getKey();
+                if (added.containsKey(path)) {
+                    continue; // replaced entirely, no need to apply the delta
+                }
+                Content base = entries.get(path);
+                if (base == null) {
+                    throw new IOException("Cannot apply delta to missing entry " + path);
+                }
+                byte[] patched;
+                try (InputStream deltaIn = diff.getInputStream(delta.getValue())) {
+                    patched = BinaryDelta.apply(base.readAllBytes(), deltaIn);
+                }
+                added.put(path, new Content(patched));
+            }
+
+            for (String path : removed) {
+                if (exists(entries, path)) {
+                    removeRecursively(entries, path);
+                    removeEmptyParents(entries, path);
+                }
+            }
+            for (Map.Entry<String, Content> entry : added.entrySet()) {
+                String path = entry.getKey();
+                // Parents first: like in the zip FileSystem, replacing the only file in an implicit directory must not
+                // turn that directory into an explicit entry
+                createParents(entries, path);
+                removeRecursively(entries, path);
+                entries.put(path, entry.getValue());
+            }
+
+            try (FileChannel out = FileChannel.open(outputFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                 NormalizedZipWriter writer = new NormalizedZipWriter(out)) {
+                for (Map.Entry<String, Content> entry : entries.entrySet()) {
+                    entry.getValue().writeTo(writer, entry.getKey());
+                }
+            }
+        } catch (ZipException e) {
+            LOGGER.warn("Failed to apply diff in a single pass, falling back to slow path:", e);
+            Files.copy(sourceFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+            applyViaFileSystem(outputFile, diffFile);
+        }
+    }
+
+    /**
+     * Whether the given file or directory exists in the archive, explicitly or implicitly (as parent of another entry).
+     */
+    private static boolean exists(NavigableMap<String, Content> entries, String path) {
+        return entries.containsKey(path) || hasChildren(entries, path);
+    }
+
+    private static boolean hasChildren(NavigableMap<String, Content> entries, String dir) {
+        String prefix = dir + "/";
+        String next = entries.higherKey(prefix);
+        return next != null && next.startsWith(prefix);
+    }
+
+    private static void removeRecursively(NavigableMap<String, Content> entries, String path) {
+        entries.remove(path);
+        String prefix = path + "/";
+        entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false).clear();
+    }
+
+    private static void removeEmptyParents(NavigableMap<String, Content> entries, String path) {
+        // Same as what happens when deleting from a zip FileSystem: once a directory is empty, it is deleted as well,
+        // regardless of whether it had an explicit entry in the archive
+        for (String dir = parent(path); dir != null; dir = parent(dir)) {
+            if (hasChildren(entries, dir)) {
+                break;
+            }
+            entries.remove(dir + "/");
+        }
+    }
+
+    private static void createParents(NavigableMap<String, Content> entries, String path) {
+        String dir = parent(path);
+        if (dir == null || exists(entries, dir)) {
+            return;
+        }
+        createParents(entries, dir);
+        entries.put(dir + "/", Content.EMPTY);
+    }
+
+    private static String parent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash == -1 ? null : path.substring(0, slash);
+    }
+
+    private static class Content {
+        private static final Content EMPTY = new Content(new byte[0]);
+
+        private final RawZipFile zip;
+        private final RawZipFile.Entry entry;
+        /** Whether the entry may be copied verbatim if it is already deflated. */
+        private final boolean copyRaw;
+        private final byte[] bytes;
+
+        private Content(RawZipFile zip, RawZipFile.Entry entry, boolean copyRaw) {
+            this.zip = zip;
+            this.entry = entry;
+            this.copyRaw = copyRaw;
+            this.bytes = null;
+        }
+
+        private Content(byte[] bytes) {
+            this.zip = null;
+            this.entry = null;
+            this.copyRaw = false;
+            this.bytes = bytes;
+        }
+
+        private byte[] readAllBytes() throws IOException {
+            if (bytes != null) {
+                return bytes;
+            }
+            try (InputStream in = zip.getInputStream(entry)) {
+                return IOUtils.toByteArray(in);
+            }
+        }
+
+        private void writeTo(NormalizedZipWriter writer, String name) throws IOException {
+            if (bytes != null) {
+                writer.write(name, new ByteArrayInputStream(bytes));
+            } else if (copyRaw && entry.method == ZipEntry.DEFLATED) {
+                writer.copyRaw(name, zip, entry);
+            } else {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    writer.write(name, in);
+                }
+            }
+        }
+    }
+
+    /**
+     * The original implementation, which applies the diff via a zip {@link FileSystem} and then rewrites the entire
+     * archive once more to sort it and strip timestamps. Only used if the archive contains features the single-pass
+     * implementation does not support.
+     */
+    static void applyViaFileSystem(Path targetFile, Path diffFile) throws IOException {
         try (FileSystem targetFileSystem = FileSystems.newFileSystem(targetFile, (ClassLoader) null)) {
             try (FileSystem diffFileSystem = FileSystems.newFileSystem(diffFile, (ClassLoader) null)) {
+                walk(diffFileSystem.getPath("/" + DELTA_DIR), targetFileSystem, DiffPatcher::applyDelta);
                 walk(diffFileSystem.getPath("/-"), targetFileSystem, DiffPatcher::remove);
                 walk(diffFileSystem.getPath("/~"), targetFileSystem, DiffPatcher::add);
                 walk(diffFileSystem.getPath("/+"), targetFileSystem, DiffPatcher::add);
@@ -54,6 +243,17 @@ public class DiffPatcher {
         Files.copy(diffPath, targetPath);
     }
 
+    private static void applyDelta(Path diffPath, Path targetPath) throws IOException {
+        if (!Files.isRegularFile(targetPath)) {
+            throw new IOException("Cannot apply delta to missing entry " + targetPath);
+        }
+        byte[] patched;
+        try (InputStream deltaIn = Files.newInputStream(diffPath)) {
+            patched = BinaryDelta.apply(Files.readAllBytes(targetPath), deltaIn);
+        }
+        Files.write(targetPath, patched);
+    }
+
     private static void remove(Path diffPath, Path targetPath) throws IOException {
         if (Files.exists(targetPath)) {
             Delete.recursively(targetPath);
@@ -92,7 +292,37 @@ public class DiffPatcher {
         }
     }
 
-    private static void stripNonDeterminism(Path path) throws IOException {
+    /**
+     * Sorts the entries of the given archive and resets their timestamps.
+     *
+     * Deflated entries are copied verbatim (only their headers are rewritten), so this is mostly limited by disk speed
+     * rather than by re-compressing the entire archive.
+     */
+    static void stripNonDeterminism(Path path) throws IOException {
+        Path tmpPath = Files.createTempFile(path.getParent(), "tmp", ".jar");
+        try {
+            try (RawZipFile zipIn = RawZipFile.open(path);
+                 FileChannel fileOut = FileChannel.open(tmpPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 NormalizedZipWriter zipOut = new NormalizedZipWriter(fileOut)) {
+                List<RawZipFile.Entry> entries = new ArrayList<>(zipIn.getEntries());
+                entries.sort(Comparator.comparing(entry -> entry.name));
+                for (RawZipFile.Entry entry : entries) {
+                    new Content(zipIn, entry, true).writeTo(zipOut, entry.name);
+                }
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (ZipException e) {
+            LOGGER.debug("Failed to strip non-determinism via raw copy, falling back to slow path:", e);
+            stripNonDeterminismViaZipStreams(path);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    /**
+     * The original implementation of {@link #stripNonDeterminism(Path)}, which inflates and deflates every entry.
+     */
+    static void stripNonDeterminismViaZipStreams(Path path) throws IOException {
         Path tmpPath = Files.createTempFile(path.getParent(), "tmp", ".jar");
         try {
             try (OutputStream fileOut = Files.newOutputStream(tmpPath, StandardOpenOption.TRUNCATE_EXISTING);
@@ -0,0 +1,200 @@
+package gg.essential.loader.stage2.diff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes zip files in exactly the format which {@link java.util.zip.ZipOutputStream} produces for entries which only
+ * have their name and the constant timestamp set (see {@link DiffPatcher}), so the result is byte-for-byte identical
+ * to what we used to produce by re-compressing everything, and therefore matches the checksums we get from the server.
+ *
+ * The main difference is that entries which are already deflated can be copied over verbatim via
+ * {@link #copyRaw(String, RawZipFile, RawZipFile.Entry)}, skipping the expensive inflate/deflate round trip.
+ * Entries must be added in the order they should appear in, no sorting is done here.
+ */
+public class NormalizedZipWriter implements Closeable {
+    private static final int LOCSIG = 0x04034b50;
+    private static final int EXTSIG = 0x08074b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+
+    // Same as what ZipOutputStream uses for deflated entries of unknown size
+    private static final int VERSION = 20;
+    private static final int FLAG = 0x0808; // sizes are in the data descriptor, names are UTF-8
+    // 1980-02-01 00:00:00 in MS-DOS format, i.e. CONSTANT_TIME_FOR_ZIP_ENTRIES as ZipOutputStream would write it
+    private static final int DOS_TIME = (2 << 21) | (1 << 16);
+
+    private final FileChannel out;
+    private final ByteBuffer header = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final List<WrittenEntry> entries = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] inputBuffer = new byte[8192];
+    private final byte[] outputBuffer = new byte[8192];
+    private long written;
+
+    public NormalizedZipWriter(FileChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Copies the given entry, which must be deflated, from the given archive without re-compressing it.
+     */
+    public void copyRaw(String name, RawZipFile source, RawZipFile.Entry entry) throws IOException {
+        if (entry.method != ZipEntry.DEFLATED) {
+            throw new ZipException("Can only copy deflated entries, " + entry.name + " uses method " + entry.method);
+        }
+        WrittenEntry written = beginEntry(name);
+        long start = out.position();
+        source.transferRaw(entry, out);
+        this.written += out.position() - start;
+        endEntry(written, entry.crc, entry.compressedSize, entry.size);
+    }
+
+    /**
+     * Adds an entry with the given (uncompressed) content, deflating it in the process.
+     */
+    public void write(String name, InputStream content) throws IOException {
+        WrittenEntry written = beginEntry(name);
+        CRC32 crc = new CRC32();
+        deflater.reset();
+        long compressedSize = 0;
+        int read;
+        while ((read = content.read(inputBuffer)) != -1) {
+            crc.update(inputBuffer, 0, read);
+            deflater.setInput(inputBuffer, 0, read);
+            while (!deflater.needsInput()) {
+                compressedSize += writeDeflated();
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            compressedSize += writeDeflated();
+        }
+        endEntry(written, crc.getValue(), compressedSize, deflater.getBytesRead());
+    }
+
+    private int writeDeflated() throws IOException {
+        int length = deflater.deflate(outputBuffer, 0, outputBuffer.length);
+        if (length > 0) {
+            writeFully(ByteBuffer.wrap(outputBuffer, 0, length));
+        }
+        return length;
+    }
+
+    private WrittenEntry beginEntry(String name) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        WrittenEntry entry = new WrittenEntry(nameBytes, written);
+        entries.add(entry);
+
+        header.clear();
+        header.putInt(LOCSIG);
+        header.putShort((short) VERSION);
+        header.putShort((short) FLAG);
+        header.putShort((short) ZipEntry.DEFLATED);
+        header.putInt(DOS_TIME);
+        header.putInt(0); // crc, compressed and uncompressed size are in the data descriptor
+        header.putInt(0);
+        header.putInt(0);
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) 0); // extra length
+        header.put(nameBytes);
+        header.flip();
+        writeFully(header);
+        return entry;
+    }
+
+    private void endEntry(WrittenEntry entry, long crc, long compressedSize, long size) throws IOException {
+        if (compressedSize >= 0xFFFFFFFFL || size >= 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 entries are not supported");
+        }
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+
+        header.clear();
+        header.putInt(EXTSIG);
+        header.putInt((int) crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.flip();
+        writeFully(header);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long cenOffset = written;
+            for (WrittenEntry entry : entries) {
+                header.clear();
+                header.putInt(CENSIG);
+                header.putShort((short) VERSION); // version made by
+                header.putShort((short) VERSION); // version needed to extract
+                header.putShort((short) FLAG);
+                header.putShort((short) ZipEntry.DEFLATED);
+                header.putInt(DOS_TIME);
+                header.putInt((int) entry.crc);
+                header.putInt((int) entry.compressedSize);
+                header.putInt((int) entry.size);
+                header.putShort((short) entry.name.length);
+                header.putShort((short) 0); // extra length
+                header.putShort((short) 0); // comment length
+                header.putShort((short) 0); // disk number
+                header.putShort((short) 0); // internal attributes
+                header.putInt(0); // external attributes
+                header.putInt((int) entry.offset);
+                header.put(entry.name);
+                header.flip();
+                writeFully(header);
+            }
+            long cenLength = written - cenOffset;
+
+            if (entries.size() >= 0xFFFF || cenOffset >= 0xFFFFFFFFL || cenLength >= 0xFFFFFFFFL) {
+                throw new ZipException("Zip64 archives are not supported");
+            }
+
+            header.clear();
+            header.putInt(ENDSIG);
+            header.putShort((short) 0); // disk number
+            header.putShort((short) 0); // disk with central directory
+            header.putShort((short) entries.size());
+            header.putShort((short) entries.size());
+            header.putInt((int) cenLength);
+            header.putInt((int) cenOffset);
+            header.putShort((short) 0); // comment length
+            header.flip();
+            writeFully(header);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            written += out.write(buffer);
+        }
+    }
+
+    private static class WrittenEntry {
+        private final byte[] name;
+        private final long offset;
+        private long crc;
+        private long compressedSize;
+        private long size;
+
+        private WrittenEntry(byte[] name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package gg.essential.loader.stage2.download;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Properties;
+
+/**
+ * A `.part` file which survives failed downloads (and restarts of the game), so the download can later be resumed
+ * instead of starting from zero again.
+ *
+ * Next to the part file we keep a small `.part.meta` file recording the checksum (and, once known, the total length)
+ * of the file we are downloading. A part file is only ever resumed if that checksum matches the one we are now
+ * expecting, otherwise it is thrown away.
+ * While a segmented download is writing into the part file, the file has holes in it and the meta file marks it as
+ * such, so if the game is closed before all segments complete, the part file is thrown away rather than resumed from.
+ */
+public class PartialDownload {
+    private static final Logger LOGGER = LogManager.getLogger(PartialDownload.class);
+
+    private static final String CHECKSUM_KEY = "checksum";
+    private static final String LENGTH_KEY = "length";
+    private static final String SEGMENTED_KEY = "segmented";
+
+    private final Path file;
+    private final Path metaFile;
+    private final String checksum;
+
+    public PartialDownload(Path file, String checksum) {
+        this.file = file;
+        this.metaFile = file.resolveSibling(file.getFileName() + ".meta");
+        this.checksum = checksum;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the number of bytes which have already been downloaded and can be resumed from.
+     * If the existing part file belongs to a different download (or there is none, or it is left over from a segmented
+     * download which never completed), it is deleted and a new one begun.
+     */
+    public long prepare() throws IOException {
+        Properties meta = readMeta();
+        if (meta != null && checksum.equals(meta.getProperty(CHECKSUM_KEY)) && !isSegmented(meta) && Files.exists(file)) {
+            long size = Files.size(file);
+            long length = getLength(meta);
+            if (length < 0 || size <= length) {
+                return size;
+            }
+        }
+
+        Files.deleteIfExists(file);
+        Properties newMeta = new Properties();
+        newMeta.setProperty(CHECKSUM_KEY, checksum);
+        writeMeta(newMeta);
+        return 0;
+    }
+
+    /**
+     * Returns the total length of the file, if we have already learned it from the server, or -1 if unknown.
+     */
+    public long getLength() {
+        Properties meta = readMeta();
+        return meta != null ? getLength(meta) : -1;
+    }
+
+    /**
+     * Marks the part file as being written by a segmented download, i.e. as not resumable until
+     * {@link #setLength(long)} is called once all segments have completed.
+     */
+    public void beginSegmented() throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty(CHECKSUM_KEY, checksum);
+        meta.setProperty(SEGMENTED_KEY, "true");
+        writeMeta(meta);
+    }
+
+    /**
+     * Records the total length of the file as announced by the server.
+     * For segmented downloads, this must only be called once all segments have completed.
+     */
+    public void setLength(long length) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty(CHECKSUM_KEY, checksum);
+        meta.setProperty(LENGTH_KEY, String.valueOf(length));
+        writeMeta(meta);
+    }
+
+    /**
+     * Feeds the first {@code length} bytes of the part file into the given digest, so it can then be continued with the
+     * remaining bytes as they are downloaded.
+     */
+    public void digestExisting(long length, MessageDigest digest) throws IOException {
+        byte[] bytes = new byte[Transfer.BUFFER_SIZE];
+        long remaining = length;
+        try (InputStream in = Files.newInputStream(file)) {
+            while (remaining > 0) {
+                int read = in.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Part file " + file + " is shorter than expected");
+                }
+                digest.update(bytes, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Opens the part file for writing, positioned at (and truncated to) the given offset.
+     */
+    public FileChannel openAt(long offset) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            channel.truncate(offset);
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Called once the part file has been fully downloaded and verified. The part file itself is kept for the caller to
+     * move into place, only the meta file is removed.
+     */
+    public void complete() throws IOException {
+        Files.deleteIfExists(metaFile);
+    }
+
+    /**
+     * Deletes the part file and its meta file, e.g. because its content turned out to be corrupt.
+     */
+    public void discard() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(metaFile);
+    }
+
+    private static long getLength(Properties meta) {
+        try {
+            return Long.parseLong(meta.getProperty(LENGTH_KEY, "-1"));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isSegmented(Properties meta) {
+        return Boolean.parseBoolean(meta.getProperty(SEGMENTED_KEY));
+    }
+
+    private Properties readMeta() {
+        if (Files.notExists(metaFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(metaFile)) {
+            properties.load(in);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to read " + metaFile + ":", e);
+            return null;
+        }
+        return properties;
+    }
+
+    private void writeMeta(Properties properties) throws IOException {
+        Files.createDirectories(metaFile.getParent());
+        try (Writer out = Files.newBufferedWriter(metaFile)) {
+            properties.store(out, null);
+        }
+    }
+}
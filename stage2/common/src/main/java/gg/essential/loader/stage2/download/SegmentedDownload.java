@@ -0,0 +1,152 @@
+package gg.essential.loader.stage2.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Downloads a file as multiple byte ranges over concurrent connections, each of which writes directly into its part of
+ * a preallocated file via positional writes.
+ *
+ * A single connection is frequently limited well below the available bandwidth (e.g. by the CDN or TCP slow start on
+ * high-latency links), so for large files this can be considerably faster than a single stream.
+ * Because the ranges complete out of order, the file cannot be digested while it is being written; the caller has to
+ * hash it once the download is complete.
+ */
+public class SegmentedDownload {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final long PROGRESS_INTERVAL_MILLIS = 50;
+
+    /**
+     * Opens a stream for the given (inclusive) byte range. Must fail if the server does not respond with exactly that
+     * range.
+     */
+    public interface RangeRequest {
+        InputStream open(long from, long to) throws IOException;
+    }
+
+    /**
+     * @param first the response body of a request for the whole file starting at byte 0, which will be used for the
+     *              first segment (so we do not need an extra request just to learn the length of the file)
+     * @param request used to open connections for all other segments
+     * @param out the channel to write to, will be grown to {@code length}
+     * @param length the total length of the file
+     * @param segments the number of segments to split the file into
+     * @param progress called on the calling thread with the total number of bytes downloaded so far
+     */
+    public static void download(
+        InputStream first,
+        RangeRequest request,
+        FileChannel out,
+        long length,
+        int segments,
+        LongConsumer progress
+    ) throws IOException {
+        // Preallocate the file, so positional writes from different threads never need to extend it
+        out.truncate(0);
+        out.write(ByteBuffer.allocate(1), length - 1);
+
+        long segmentLength = (length + segments - 1) / segments;
+        AtomicLong downloaded = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(segments, runnable -> {
+            Thread thread = new Thread(runnable, "Essential Loader Download #" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < segments; i++) {
+                long from = i * segmentLength;
+                long to = Math.min(length, from + segmentLength) - 1;
+                if (from > to) {
+                    break;
+                }
+                boolean isFirst = i == 0;
+                futures.add(executor.submit(() -> {
+                    try (InputStream in = isFirst ? first : request.open(from, to)) {
+                        copyRange(in, out, from, to - from + 1, downloaded);
+                    }
+                    return null;
+                }));
+            }
+
+            // Progress is reported from this thread only, LoaderUI implementations are generally not thread-safe.
+            // Failures are checked for in any order, so we can bail as soon as any one segment fails.
+            while (!futures.isEmpty()) {
+                Iterator<Future<?>> iterator = futures.iterator();
+                while (iterator.hasNext()) {
+                    Future<?> future = iterator.next();
+                    if (future.isDone()) {
+                        future.get();
+                        iterator.remove();
+                    }
+                }
+                progress.accept(downloaded.get());
+                if (!futures.isEmpty()) {
+                    Thread.sleep(PROGRESS_INTERVAL_MILLIS);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void copyRange(InputStream in, FileChannel out, long position, long length, AtomicLong downloaded) throws IOException {
+        byte[] bytes = new byte[Transfer.BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+            if (read < 0) {
+                throw new IOException("Range at " + position + " ended " + remaining + " bytes early");
+            }
+            buffer.clear().limit(read);
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer, position);
+            }
+            remaining -= read;
+            downloaded.addAndGet(read);
+        }
+    }
+
+    /**
+     * Extracts the total length of the file from a `Content-Range: bytes 0-1233/1234` header.
+     *
+     * @return the total length, or -1 if missing or unknown
+     */
+    public static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1; // "*"
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package gg.essential.loader.stage2.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.function.LongConsumer;
+
+/**
+ * Copies a download stream to a file channel in large chunks, digesting the bytes on the way.
+ *
+ * The buffer is only handed to the file (and the progress callback) once it is full, so a ~30MB jar takes a few hundred
+ * writes and progress updates rather than tens of thousands.
+ * We cannot use {@link java.nio.channels.FileChannel#transferFrom} because the digest needs to see every byte, and a
+ * direct buffer would not save us anything either since the http response is only available as a stream.
+ */
+public class Transfer {
+    public static final int BUFFER_SIZE = 128 * 1024;
+
+    /**
+     * @param in the stream to read from, until EOF
+     * @param out the channel to write to
+     * @param expectedLength the number of bytes announced by the server, or -1 if unknown; receiving more than this
+     *                       will abort the transfer, and so will the stream ending before all of them were received
+     *                       (which is how a lost connection manifests with {@link java.net.HttpURLConnection})
+     * @param digest digest which will be updated with all bytes written to {@code out}
+     * @param progress called with the total number of bytes written so far, after every chunk
+     * @return the total number of bytes transferred
+     */
+    public static long copy(InputStream in, WritableByteChannel out, long expectedLength, MessageDigest digest, LongConsumer progress) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long total = 0;
+        boolean eof = false;
+        while (!eof) {
+            // Fill the buffer as far as possible before passing it on
+            int filled = 0;
+            while (filled < bytes.length) {
+                int read = in.read(bytes, filled, bytes.length - filled);
+                if (read < 0) {
+                    eof = true;
+                    break;
+                }
+                filled += read;
+            }
+            if (filled == 0) {
+                break;
+            }
+
+            total += filled;
+            if (expectedLength >= 0 && total > expectedLength) {
+                throw new IOException("Received more data than the announced Content-Length of " + expectedLength + " bytes");
+            }
+
+            digest.update(bytes, 0, filled);
+            buffer.clear().limit(filled);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+
+            progress.accept(total);
+        }
+        if (expectedLength >= 0 && total < expectedLength) {
+            // Everything received so far has been written, so the caller can resume from there
+            throw new IOException("Connection closed after " + total + " of the announced " + expectedLength + " bytes");
+        }
+        return total;
+    }
+}
@@ -0,0 +1,401 @@
+package gg.essential.loader.stage2.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.attribute.PosixFilePermission.GROUP_WRITE;
+import static java.nio.file.attribute.PosixFilePermission.OTHERS_WRITE;
+import static java.nio.file.attribute.PosixFilePermission.OWNER_WRITE;
+
+/**
+ * A content-addressed store for jar files (downloaded mod jars, extracted libraries, processed jars), keyed by their
+ * SHA-256 hash.
+ *
+ * Files are added to the store once and then hard-linked to wherever they are needed, so identical jars used by
+ * multiple mods, game versions or (if the store is shared via the `essential.stage2.blobStore.dir` property) game
+ * instances only take up disk space and time to write once. If hard links are not supported, we fall back to copying.
+ *
+ * In addition to the hash of their content, blobs can be looked up via aliases, e.g. the checksum we get from the
+ * server for a given jar. Callers should verify anything they get via an alias before trusting it.
+ *
+ * Blobs which have not been used in a while are removed by {@link #prune()}. Since they are hard-linked, this does not
+ * affect any files still using them, it only means the next user will have to add them again.
+ * When a blob was last used is tracked via the modification time of a separate marker file in the `uses` directory,
+ * because updating that of the blob itself would also update it for all its hard links, which in turn would make
+ * every cache keyed on the size and modification time of those (e.g. {@link ChecksumCache}) re-hash them.
+ *
+ * Because anything writing to one of the hard links in place also modifies the blob, blobs are made read-only where
+ * possible, and an existing blob is re-hashed before it is re-used (whether found via its hash or an alias) if its size
+ * or modification time differ from those recorded (in its marker file) when it was last verified. If it no longer
+ * matches its hash, it is not used and replaced the next time its content is added.
+ */
+public class BlobStore {
+    private static final Logger LOGGER = LogManager.getLogger(BlobStore.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("essential.stage2.blobStore", "true"));
+    private static final String DIR = System.getProperty("essential.stage2.blobStore.dir");
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(Long.getLong("essential.stage2.blobStore.maxAgeDays", 30));
+
+    private final Path objectsDir;
+    private final Path aliasesDir;
+    private final Path usesDir;
+
+    public BlobStore(Path defaultDir) {
+        Path dir = DIR != null ? defaultDir.getFileSystem().getPath(DIR) : defaultDir;
+        this.objectsDir = dir.resolve("objects");
+        this.aliasesDir = dir.resolve("aliases");
+        this.usesDir = dir.resolve("uses");
+    }
+
+    /**
+     * Returns the blob previously registered under the given alias, or {@code null} if there is none (or it no longer
+     * matches its hash, in which case it will be replaced once the caller adds the content again).
+     */
+    public @Nullable Path find(@Nullable String alias) {
+        if (!ENABLED || alias == null) {
+            return null;
+        }
+        Path aliasFile = aliasesDir.resolve(sanitize(alias));
+        try {
+            if (Files.notExists(aliasFile)) {
+                return null;
+            }
+            String hash = new String(Files.readAllBytes(aliasFile), StandardCharsets.UTF_8).trim();
+            Path blob = blobPath(hash);
+            if (Files.notExists(blob) || !verify(blob, hash)) {
+                return null;
+            }
+            touch(blob);
+            return blob;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Failed to read blob alias " + aliasFile + ":", e);
+            return null;
+        }
+    }
+
+    /**
+     * Registers the given blob under the given alias, so it can later be found via {@link #find(String)}.
+     */
+    public void alias(String alias, Path blob) {
+        if (!ENABLED || !isBlob(blob)) {
+            return;
+        }
+        Path aliasFile = aliasesDir.resolve(sanitize(alias));
+        try {
+            Files.createDirectories(aliasesDir);
+            Path tmpFile = Files.createTempFile(aliasesDir, "tmp-", "");
+            try {
+                Files.write(tmpFile, blob.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                Files.move(tmpFile, aliasFile, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write blob alias " + aliasFile + ":", e);
+        }
+    }
+
+    /**
+     * Moves the given file to the given target, going through the store (and registering it under the given alias) if
+     * possible, so that other users of the same content can share it.
+     * If the source file is already a blob in the store, it is left as is.
+     */
+    public void install(Path source, Path target, @Nullable String alias) throws IOException {
+        Path blob;
+        try {
+            blob = add(source);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to add " + source + " to blob store:", e);
+            blob = null;
+        }
+        if (blob == null) {
+            Files.move(source, target);
+            return;
+        }
+        if (alias != null) {
+            alias(alias, blob);
+        }
+        link(blob, target);
+    }
+
+    /**
+     * Moves the given file into the store (or deletes it if the store already has the same content) and returns the
+     * path of the blob, or {@code null} if the store is disabled.
+     */
+    public @Nullable Path add(Path file) throws IOException {
+        if (!ENABLED) {
+            return null;
+        }
+        if (isBlob(file)) {
+            touch(file);
+            return file;
+        }
+
+        String hash;
+        try (InputStream in = Files.newInputStream(file)) {
+            hash = DigestUtils.sha256Hex(in);
+        }
+        Path blob = blobPath(hash);
+        if (Files.exists(blob) && verify(blob, hash)) {
+            touch(blob);
+            Files.delete(file);
+            return blob;
+        }
+
+        Files.createDirectories(blob.getParent());
+        Path tmpFile = Files.createTempFile(blob.getParent(), "tmp-", "");
+        try {
+            Files.move(file, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            makeReadOnly(tmpFile);
+            // Replaces the existing blob if it failed verification
+            Files.move(tmpFile, blob, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        recordVerified(blob);
+        return blob;
+    }
+
+    /**
+     * Adds the content of the given stream to the store and returns the path of the blob, or {@code null} if the store
+     * is disabled.
+     * The source is read once to hash it and, only if the store does not already contain it, a second time to write it.
+     */
+    public @Nullable Path add(StreamSource source) throws IOException {
+        if (!ENABLED) {
+            return null;
+        }
+
+        // Hash first, so we do not have to write anything if we already have it (which should be the common case)
+        String hash;
+        try (InputStream in = source.open()) {
+            hash = DigestUtils.sha256Hex(in);
+        }
+        Path blob = blobPath(hash);
+        if (Files.exists(blob) && verify(blob, hash)) {
+            touch(blob);
+            return blob;
+        }
+
+        Files.createDirectories(blob.getParent());
+        Path tmpFile = Files.createTempFile(blob.getParent(), "tmp-", "");
+        try {
+            MessageDigest digest = DigestUtils.getSha256Digest();
+            try (InputStream in = source.open(); OutputStream out = Files.newOutputStream(tmpFile)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (!hash.equals(Hex.encodeHexString(digest.digest()))) {
+                throw new IOException("Content changed while adding it to the blob store");
+            }
+            makeReadOnly(tmpFile);
+            // Replaces the existing blob if it failed verification
+            Files.move(tmpFile, blob, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        recordVerified(blob);
+        return blob;
+    }
+
+    /**
+     * Makes the given blob available at the given (not yet existing) path, preferably via a hard link.
+     */
+    public void link(Path blob, Path target) throws IOException {
+        try {
+            Files.createLink(target, blob);
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            LOGGER.debug("Failed to hard link " + target + " to " + blob + ", copying instead:", e);
+        }
+
+        // Copy to tmp file first, so we do not leave behind incomplete files
+        Path tmpFile = Files.createTempFile(target.getParent(), "tmp", ".jar");
+        try {
+            Files.copy(blob, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Removes blobs which have not been used in a while, as well as any aliases pointing to no longer existing blobs.
+     * Failures are ignored, they'll be retried on the next call.
+     */
+    public void prune() {
+        if (!ENABLED || Files.notExists(objectsDir)) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - MAX_AGE_MILLIS;
+        try (Stream<Path> stream = Files.walk(objectsDir, 2)) {
+            stream.filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    Path useFile = usesDir.resolve(file.getFileName());
+                    // Blobs from before we had use files only have their own modification time
+                    Path lastUsed = Files.exists(useFile) ? useFile : file;
+                    if (Files.getLastModifiedTime(lastUsed).toMillis() < cutoff) {
+                        LOGGER.debug("Removing unused blob {}", file);
+                        Files.delete(file);
+                        Files.deleteIfExists(useFile);
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to remove unused blob " + file + ":", e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug("Failed to prune blob store:", e);
+        }
+
+        if (Files.exists(usesDir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(usesDir)) {
+                for (Path useFile : stream) {
+                    try {
+                        if (Files.notExists(blobPath(useFile.getFileName().toString()))) {
+                            Files.delete(useFile);
+                        }
+                    } catch (IOException | IllegalArgumentException e) {
+                        LOGGER.debug("Failed to check blob use " + useFile + ":", e);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Failed to prune blob uses:", e);
+            }
+        }
+
+        if (Files.notExists(aliasesDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(aliasesDir)) {
+            for (Path aliasFile : stream) {
+                try {
+                    String hash = new String(Files.readAllBytes(aliasFile), StandardCharsets.UTF_8).trim();
+                    if (Files.notExists(blobPath(hash))) {
+                        Files.delete(aliasFile);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    LOGGER.debug("Failed to check blob alias " + aliasFile + ":", e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to prune blob aliases:", e);
+        }
+    }
+
+    private boolean isBlob(Path file) {
+        return file.toAbsolutePath().normalize().startsWith(objectsDir.toAbsolutePath().normalize());
+    }
+
+    private Path blobPath(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid blob hash: " + hash);
+        }
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Checks whether the given existing blob still has the given hash, only actually re-hashing it if its size or
+     * modification time changed since it was last verified.
+     */
+    private boolean verify(Path blob, String hash) throws IOException {
+        Path useFile = usesDir.resolve(blob.getFileName());
+        try {
+            if (Files.exists(useFile) && fileState(blob).equals(new String(Files.readAllBytes(useFile), StandardCharsets.UTF_8))) {
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to read blob use " + useFile + ":", e);
+        }
+
+        String actualHash;
+        try (InputStream in = Files.newInputStream(blob)) {
+            actualHash = DigestUtils.sha256Hex(in);
+        }
+        if (!hash.equals(actualHash)) {
+            LOGGER.warn("Blob {} has been modified (now has hash {}), it will be replaced.", blob, actualHash);
+            return false;
+        }
+        recordVerified(blob);
+        return true;
+    }
+
+    /**
+     * Records the current size and modification time of the given (just verified) blob in its use file, which also
+     * marks it as used.
+     */
+    private void recordVerified(Path blob) {
+        Path useFile = usesDir.resolve(blob.getFileName());
+        try {
+            Files.createDirectories(usesDir);
+            Files.write(useFile, fileState(blob).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write blob use " + useFile + ":", e);
+        }
+    }
+
+    private static String fileState(Path file) throws IOException {
+        return Files.size(file) + "," + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    // Only on POSIX systems: On Windows, read-only files cannot be deleted, which we do need to be able to do with
+    // the hard links to our blobs.
+    private static void makeReadOnly(Path file) {
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        try {
+            Set<PosixFilePermission> permissions = EnumSet.copyOf(view.readAttributes().permissions());
+            permissions.removeAll(EnumSet.of(OWNER_WRITE, GROUP_WRITE, OTHERS_WRITE));
+            view.setPermissions(permissions);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Failed to make " + file + " read-only:", e);
+        }
+    }
+
+    private void touch(Path blob) {
+        Path useFile = usesDir.resolve(blob.getFileName());
+        try {
+            if (Files.exists(useFile)) {
+                Files.setLastModifiedTime(useFile, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                Files.createDirectories(usesDir);
+                Files.write(useFile, new byte[0]);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to update last use of blob " + blob + ":", e);
+        }
+    }
+
+    private static String sanitize(String alias) {
+        // Checksums may contain characters which aren't allowed in file names on all systems (e.g. `:` on Windows)
+        return alias.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public interface StreamSource {
+        InputStream open() throws IOException;
+    }
+}
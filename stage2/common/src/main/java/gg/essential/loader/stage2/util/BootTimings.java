@@ -0,0 +1,156 @@
+package gg.essential.loader.stage2.util;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each phase of the boot (stage0, stage1 and stage2) takes, so we can see where boot time goes on
+ * real machines.
+ *
+ * Each stage is loaded by a different class loader and may be of a different version, so rather than sharing any
+ * classes, timings are stored in system properties: `essential.loader.timing.<phase>` is set to the `System.nanoTime()`
+ * at which the phase started and ended, as `<start>,<end>`, with further `;`-separated pairs if a phase ran more than
+ * once.
+ *
+ * Once Essential has been initialized, stage2 logs a summary of all recorded phases and, if the
+ * `essential.loader.timings.json` property is set to `true`, also writes it to `essential/loader-timings.json`.
+ */
+public class BootTimings {
+    private static final Logger LOGGER = LogManager.getLogger(BootTimings.class);
+    public static final String PROPERTY_PREFIX = "essential.loader.timing.";
+    private static final String REPORTED_PROPERTY = "essential.loader.timings.reported";
+    private static final boolean WRITE_JSON = Boolean.getBoolean("essential.loader.timings.json");
+
+    /**
+     * Records that the given phase ran from the given {@code System.nanoTime()} until now.
+     */
+    public static void record(String phase, long startNanos) {
+        long endNanos = System.nanoTime();
+        String key = PROPERTY_PREFIX + phase;
+        synchronized (BootTimings.class) {
+            String existing = System.getProperty(key);
+            String value = startNanos + "," + endNanos;
+            System.setProperty(key, existing == null ? value : existing + ";" + value);
+        }
+    }
+
+    /**
+     * Logs a summary of all phases recorded so far and, if enabled, writes it to a json file in the given directory.
+     * Only does anything the first time it is called in a given JVM.
+     */
+    public static void report(Path essentialDir) {
+        if (Boolean.getBoolean(REPORTED_PROPERTY)) {
+            return;
+        }
+        System.setProperty(REPORTED_PROPERTY, "true");
+
+        List<Phase> phases = collect();
+        if (phases.isEmpty()) {
+            return;
+        }
+        long bootStart = phases.get(0).start;
+        long bootEnd = phases.stream().mapToLong(it -> it.end).max().orElse(bootStart);
+
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : phases) {
+            summary.append(summary.length() == 0 ? "" : ", ").append(phase.name).append('=').append(millis(phase.total)).append("ms");
+            if (phase.count > 1) {
+                summary.append(" (").append(phase.count).append("x)");
+            }
+        }
+        LOGGER.info("Boot took {}ms: {}", millis(bootEnd - bootStart), summary);
+
+        if (WRITE_JSON) {
+            writeJson(essentialDir.resolve("loader-timings.json"), phases, bootStart, bootEnd);
+        }
+    }
+
+    private static List<Phase> collect() {
+        Properties properties = System.getProperties();
+        List<Phase> phases = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(PROPERTY_PREFIX)) {
+                continue;
+            }
+            try {
+                Phase phase = new Phase(key.substring(PROPERTY_PREFIX.length()));
+                for (String run : properties.getProperty(key).split(";")) {
+                    String[] parts = run.split(",");
+                    long start = Long.parseLong(parts[0]);
+                    long end = Long.parseLong(parts[1]);
+                    phase.start = Math.min(phase.start, start);
+                    phase.end = Math.max(phase.end, end);
+                    phase.total += end - start;
+                    phase.count++;
+                }
+                phases.add(phase);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Ignoring malformed boot timing " + key + ":", e);
+            }
+        }
+        phases.sort(Comparator.comparingLong(it -> it.start));
+        return phases;
+    }
+
+    private static void writeJson(Path file, List<Phase> phases, long bootStart, long bootEnd) {
+        JsonObject root = new JsonObject();
+        root.addProperty("totalMillis", millis(bootEnd - bootStart));
+        JsonArray array = new JsonArray();
+        for (Phase phase : phases) {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("name", phase.name);
+            obj.addProperty("startMillis", millis(phase.start - bootStart));
+            obj.addProperty("endMillis", millis(phase.end - bootStart));
+            obj.addProperty("totalMillis", millis(phase.total));
+            obj.addProperty("count", phase.count);
+            array.add(obj);
+        }
+        root.add("phases", array);
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = Files.createTempFile(file.getParent(), "tmp-", ".json");
+            try {
+                try (Writer out = Files.newBufferedWriter(tempFile)) {
+                    new GsonBuilder().setPrettyPrinting().create().toJson(root, out);
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write boot timings to " + file + ":", e);
+        }
+    }
+
+    private static double millis(long nanos) {
+        // Rounded to 0.1ms, anything more precise is just noise
+        return Math.round(nanos / (double) TimeUnit.MICROSECONDS.toNanos(100)) / 10.0;
+    }
+
+    private static class Phase {
+        private final String name;
+        private long start = Long.MAX_VALUE;
+        private long end = Long.MIN_VALUE;
+        private long total;
+        private int count;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package gg.essential.loader.stage2.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Remembers which jars were extracted from which outer jar (identified by its checksum), so that on subsequent boots
+ * we do not have to open the outer jar at all to know which inner jars to load.
+ *
+ * For each extracted jar we record its SHA-256 hash as well as its size and modification time. As long as the latter
+ * two still match, the file is assumed to be unchanged. Otherwise it is hashed again and, if it no longer matches, the
+ * whole index is considered invalid, so the jars get extracted again.
+ *
+ * Any failure to read or write the index is ignored, it'll simply behave as if there was no index.
+ */
+public class ExtractedJarsIndex {
+    private static final Logger LOGGER = LogManager.getLogger(ExtractedJarsIndex.class);
+    private static final String FILE_NAME = "index.properties";
+
+    private static final String OUTER_CHECKSUM_KEY = "outerChecksum";
+    private static final String COUNT_KEY = "count";
+    private static final String PATH_KEY = ".path";
+    private static final String HASH_KEY = ".sha256";
+    private static final String SIZE_KEY = ".size";
+    private static final String MODIFIED_KEY = ".modified";
+
+    private final Path dir;
+    private final Path file;
+    private final Properties properties;
+
+    public ExtractedJarsIndex(Path dir) {
+        this.dir = dir;
+        this.file = dir.resolve(FILE_NAME);
+        this.properties = read(file);
+    }
+
+    /**
+     * Returns the jars extracted from the outer jar with the given checksum, or {@code null} if the index does not know
+     * about that jar or any of its extracted jars are missing or have been modified.
+     */
+    public @Nullable List<Path> lookup(@Nullable String outerChecksum) {
+        if (outerChecksum == null || !outerChecksum.equals(properties.getProperty(OUTER_CHECKSUM_KEY))) {
+            return null;
+        }
+        try {
+            int count = Integer.parseInt(properties.getProperty(COUNT_KEY));
+            List<Path> jars = new ArrayList<>(count);
+            boolean updated = false;
+            for (int i = 0; i < count; i++) {
+                String key = "jar." + i;
+                Path jar = dir.resolve(properties.getProperty(key + PATH_KEY));
+                String expectedHash = properties.getProperty(key + HASH_KEY);
+                if (Files.notExists(jar) || expectedHash == null) {
+                    LOGGER.debug("Extracted jar {} is missing", jar);
+                    return null;
+                }
+                if (!isUnmodified(jar, key)) {
+                    // Might just have been touched, check whether the content actually changed
+                    if (!expectedHash.equals(hash(jar))) {
+                        LOGGER.warn("Extracted jar {} has been modified, extracting again", jar);
+                        return null;
+                    }
+                    record(key, jar, expectedHash);
+                    updated = true;
+                }
+                jars.add(jar);
+            }
+            if (updated) {
+                write();
+            }
+            return jars;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Failed to check extracted jars index at " + file + ":", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the given extracted jar, using the index if it is still up-to-date for that jar.
+     */
+    public String getHash(Path jar) throws IOException {
+        String key = findKey(jar);
+        if (key != null && isUnmodified(jar, key)) {
+            String hash = properties.getProperty(key + HASH_KEY);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        return hash(jar);
+    }
+
+    /**
+     * Returns whether the index has an entry for the given extracted jar (regardless of whether it is still up-to-date).
+     */
+    public boolean contains(Path jar) {
+        return findKey(jar) != null;
+    }
+
+    private @Nullable String findKey(Path jar) {
+        int count;
+        try {
+            count = Integer.parseInt(properties.getProperty(COUNT_KEY, "0"));
+        } catch (NumberFormatException e) {
+            count = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            String key = "jar." + i;
+            if (jar.equals(dir.resolve(properties.getProperty(key + PATH_KEY, "")))) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the content of the index with the given extracted jars, as extracted from the given outer jar.
+     *
+     * @param hashes the SHA-256 hash of each jar, in the same order
+     */
+    public void store(@Nullable String outerChecksum, List<Path> jars, List<String> hashes) {
+        properties.clear();
+        if (outerChecksum == null) {
+            write();
+            return;
+        }
+        try {
+            for (int i = 0; i < jars.size(); i++) {
+                record("jar." + i, jars.get(i), hashes.get(i));
+            }
+            properties.setProperty(COUNT_KEY, String.valueOf(jars.size()));
+            properties.setProperty(OUTER_CHECKSUM_KEY, outerChecksum);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to index extracted jars:", e);
+            properties.clear();
+        }
+        write();
+    }
+
+    public static String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+
+    private boolean isUnmodified(Path jar, String key) throws IOException {
+        return String.valueOf(Files.size(jar)).equals(properties.getProperty(key + SIZE_KEY))
+            && String.valueOf(Files.getLastModifiedTime(jar).toMillis()).equals(properties.getProperty(key + MODIFIED_KEY));
+    }
+
+    private void record(String key, Path jar, String hash) throws IOException {
+        properties.setProperty(key + PATH_KEY, dir.relativize(jar).toString().replace('\\', '/'));
+        properties.setProperty(key + HASH_KEY, hash);
+        properties.setProperty(key + SIZE_KEY, String.valueOf(Files.size(jar)));
+        properties.setProperty(key + MODIFIED_KEY, String.valueOf(Files.getLastModifiedTime(jar).toMillis()));
+    }
+
+    private static Properties read(Path file) {
+        Properties properties = new Properties();
+        if (Files.notExists(file)) {
+            return properties;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to read extracted jars index at " + file + ":", e);
+            properties.clear();
+        }
+        return properties;
+    }
+
+    private void write() {
+        try {
+            Path tempFile = Files.createTempFile(dir, "tmp-", ".properties");
+            try {
+                try (Writer out = Files.newBufferedWriter(tempFile)) {
+                    properties.store(out, null);
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write extracted jars index to " + file + ":", e);
+        }
+    }
+}
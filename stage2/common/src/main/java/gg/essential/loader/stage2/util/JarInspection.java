@@ -0,0 +1,167 @@
+package gg.essential.loader.stage2.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Answers questions about the content of a jar (its manifest, the version of a bundled library, ...) while opening it
+ * at most once, no matter how many questions are asked.
+ *
+ * If the jar can be identified by a key (usually its checksum), answers are also persisted to disk, so on subsequent
+ * boots the jar need not be opened at all to answer them again.
+ *
+ * Any failure to read or write the persisted answers is ignored, it'll simply behave as if there were none.
+ */
+public class JarInspection implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(JarInspection.class);
+    private static final String MANIFEST_KEY = "manifest";
+    private static final String MANIFEST_PREFIX = "manifest.";
+    // Properties can't store null, so we use a value which none of our answers can ever be
+    private static final String NULL = "\u0000";
+
+    private final Path jar;
+    private final @Nullable Path cacheFile;
+    private final Properties cache;
+    private ZipFile zipFile;
+    private Attributes manifest;
+
+    /**
+     * @param cacheDir directory in which answers are persisted
+     * @param key identifies the content of the jar, or {@code null} if unknown, in which case nothing is persisted
+     */
+    public JarInspection(Path jar, Path cacheDir, @Nullable String key) {
+        this.jar = jar;
+        this.cacheFile = key != null ? cacheDir.resolve(key.replaceAll("[^A-Za-z0-9._-]", "_") + ".properties") : null;
+        this.cache = read(cacheFile);
+    }
+
+    public Path getPath() {
+        return jar;
+    }
+
+    /**
+     * Returns the main attributes of the jar's manifest, or empty attributes if it has none.
+     */
+    public Attributes getManifestAttributes() throws IOException {
+        if (manifest != null) {
+            return manifest;
+        }
+
+        Attributes attributes = new Attributes();
+        if (cache.containsKey(MANIFEST_KEY)) {
+            for (String name : cache.stringPropertyNames()) {
+                if (name.startsWith(MANIFEST_PREFIX)) {
+                    attributes.putValue(name.substring(MANIFEST_PREFIX.length()), cache.getProperty(name));
+                }
+            }
+            return manifest = attributes;
+        }
+
+        ZipFile zip = getZipFile();
+        ZipEntry entry = zip.getEntry("META-INF/MANIFEST.MF");
+        if (entry != null) {
+            try (InputStream in = zip.getInputStream(entry)) {
+                attributes = new Manifest(in).getMainAttributes();
+            }
+        }
+        cache.setProperty(MANIFEST_KEY, "");
+        for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+            cache.setProperty(MANIFEST_PREFIX + attribute.getKey(), String.valueOf(attribute.getValue()));
+        }
+        write();
+        return manifest = attributes;
+    }
+
+    /**
+     * Returns the answer to the given query, computing it from the content of the jar only if it has not been
+     * answered before.
+     *
+     * @param key uniquely identifies the query
+     */
+    public @Nullable String get(String key, Query query) throws IOException {
+        String cached = cache.getProperty(key);
+        if (cached != null) {
+            return cached.equals(NULL) ? null : cached;
+        }
+        String value = query.compute(getZipFile());
+        cache.setProperty(key, value != null ? value : NULL);
+        write();
+        return value;
+    }
+
+    /**
+     * Returns the opened jar, opening it if that has not yet happened.
+     * Use {@link #get(String, Query)} instead where possible.
+     */
+    public ZipFile getZipFile() throws IOException {
+        if (zipFile == null) {
+            zipFile = new ZipFile(jar.toFile());
+        }
+        return zipFile;
+    }
+
+    @Override
+    public void close() {
+        if (zipFile != null) {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close " + jar + ":", e);
+            }
+            zipFile = null;
+        }
+    }
+
+    private static Properties read(@Nullable Path file) {
+        Properties properties = new Properties();
+        if (file == null || Files.notExists(file)) {
+            return properties;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to read jar inspection cache at " + file + ":", e);
+            properties.clear();
+        }
+        return properties;
+    }
+
+    private void write() {
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = Files.createTempFile(cacheFile.getParent(), "tmp-", ".properties");
+            try {
+                try (Writer out = Files.newBufferedWriter(tempFile)) {
+                    cache.store(out, null);
+                }
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to write jar inspection cache to " + cacheFile + ":", e);
+        }
+    }
+
+    public interface Query {
+        @Nullable String compute(ZipFile zip) throws IOException;
+    }
+}
@@ -0,0 +1,130 @@
+package gg.essential.loader.stage2.diff;
+
+import gg.essential.loader.stage2.util.Delete;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryDeltaTest {
+    private static final byte[] BASE = "Hello World, this is the old content.".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TARGET = "Hello Essential, this is the new content.".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void applyCopyAndInsert() throws IOException {
+        assertArrayEquals(TARGET, BinaryDelta.apply(BASE, new ByteArrayInputStream(delta(BASE))));
+    }
+
+    @Test
+    void rejectsDifferentBase() {
+        byte[] otherBase = "Hello World, this is some other content".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> BinaryDelta.apply(otherBase, new ByteArrayInputStream(delta(BASE))));
+    }
+
+    @Test
+    void diffPatcherAppliesDeltaEntries() throws IOException {
+        Path tmpDir = Files.createTempDirectory("test");
+        try {
+            Path source = tmpDir.resolve("source.jar");
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+                out.putNextEntry(new ZipEntry("a/file.txt"));
+                out.write(BASE);
+                out.putNextEntry(new ZipEntry("b.txt"));
+                out.write(BASE);
+            }
+
+            Path diff = tmpDir.resolve("diff.jar");
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(diff))) {
+                out.putNextEntry(new ZipEntry("\u0394/a/file.txt"));
+                out.write(delta(BASE));
+            }
+
+            Path output = tmpDir.resolve("output.jar");
+            DiffPatcher.apply(source, diff, output);
+
+            try (ZipFile zip = new ZipFile(output.toFile())) {
+                assertEquals(2, zip.size());
+                assertArrayEquals(TARGET, readAll(zip, "a/file.txt"));
+                assertArrayEquals(BASE, readAll(zip, "b.txt"));
+            }
+        } finally {
+            Delete.recursively(tmpDir);
+        }
+    }
+
+    /**
+     * Encodes a delta from {@link #BASE} to {@link #TARGET}, see {@link BinaryDelta} for the format.
+     */
+    private static byte[] delta(byte[] base) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x45444c54);
+        out.writeByte(1);
+        out.writeInt((int) crc(base));
+        out.writeInt((int) crc(TARGET));
+        writeVarInt(out, base.length);
+        writeVarInt(out, TARGET.length);
+        // "Hello "
+        out.writeByte(0);
+        writeVarInt(out, 0);
+        writeVarInt(out, 6);
+        // "Essential"
+        byte[] insert = "Essential".getBytes(StandardCharsets.UTF_8);
+        out.writeByte(1);
+        writeVarInt(out, insert.length);
+        out.write(insert);
+        // ", this is the "
+        out.writeByte(0);
+        writeVarInt(out, 11);
+        writeVarInt(out, 14);
+        // "new"
+        out.writeByte(1);
+        writeVarInt(out, 3);
+        out.write("new".getBytes(StandardCharsets.UTF_8));
+        // " content."
+        out.writeByte(0);
+        writeVarInt(out, 28);
+        writeVarInt(out, 9);
+        return bytes.toByteArray();
+    }
+
+    private static void writeVarInt(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static byte[] readAll(ZipFile zip, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
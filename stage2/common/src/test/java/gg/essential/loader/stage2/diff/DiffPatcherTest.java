@@ -0,0 +1,64 @@
+package gg.essential.loader.stage2.diff;
+
+import gg.essential.loader.stage2.util.Delete;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class DiffPatcherTest {
+    @Test
+    void singlePassMatchesFileSystem() throws IOException {
+        Path tmpDir = Files.createTempDirectory("test");
+        try {
+            Path source = tmpDir.resolve("source.jar");
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(source))) {
+                out.putNextEntry(new ZipEntry("a/file.txt"));
+                out.write(content("old file"));
+                out.putNextEntry(new ZipEntry("a/unchanged.txt"));
+                out.write(content("unchanged"));
+                out.putNextEntry(new ZipEntry("b.txt"));
+                out.write(content("removed"));
+            }
+
+            // Compressed differently than we would, so raw-copying them would produce a different result
+            Path diff = tmpDir.resolve("diff.jar");
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(diff))) {
+                out.setLevel(Deflater.BEST_SPEED);
+                out.putNextEntry(new ZipEntry("~/a/file.txt"));
+                out.write(content("new file"));
+                out.setLevel(Deflater.BEST_COMPRESSION);
+                out.putNextEntry(new ZipEntry("+/c/added.txt"));
+                out.write(content("added"));
+                out.putNextEntry(new ZipEntry("-/b.txt"));
+            }
+
+            Path singlePass = tmpDir.resolve("single-pass.jar");
+            DiffPatcher.apply(source, diff, singlePass);
+
+            Path viaFileSystem = tmpDir.resolve("file-system.jar");
+            Files.copy(source, viaFileSystem, StandardCopyOption.REPLACE_EXISTING);
+            DiffPatcher.applyViaFileSystem(viaFileSystem, diff);
+
+            assertArrayEquals(Files.readAllBytes(viaFileSystem), Files.readAllBytes(singlePass));
+        } finally {
+            Delete.recursively(tmpDir);
+        }
+    }
+
+    private static byte[] content(String name) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append(name).append(" line ").append(i * 31 % 997).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
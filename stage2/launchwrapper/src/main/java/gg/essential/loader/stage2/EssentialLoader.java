@@ -2,14 +2,18 @@ package gg.essential.loader.stage2;
 
 import gg.essential.loader.stage2.data.ModJarMetadata;
 import gg.essential.loader.stage2.relaunch.Relaunch;
+import gg.essential.loader.stage2.util.BootTimings;
 import gg.essential.loader.stage2.util.Delete;
+import gg.essential.loader.stage2.util.JarInspection;
 import gg.essential.loader.stage2.utils.Versions;
 import net.minecraft.launchwrapper.ITweaker;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraft.launchwrapper.LaunchClassLoader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -20,17 +24,17 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +42,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static gg.essential.loader.stage2.Utils.findMostRecentFile;
 import static gg.essential.loader.stage2.Utils.findNextMostRecentFile;
@@ -48,16 +54,35 @@ public class EssentialLoader extends EssentialLoaderBase {
     private static final String STAGE1_TWEAKER = "gg.essential.loader.stage1.EssentialSetupTweaker";
     private static final String STAGE0_TWEAKERS_KEY = "essential.loader.stage2.stage0tweakers";
     private static final Set<String> STAGE0_TWEAKERS = new HashSet<>();
+    /** Libraries which we want our own version of, even if there is an older version already on the classpath. */
+    private static final List<String> PRELOADED_LIBRARIES = Arrays.asList(
+        "kotlin",
+        "kotlinx/coroutines",
+        "gg/essential/universal",
+        "gg/essential/elementa",
+        "gg/essential/vigilance",
+        "codes/som/anthony/koffee",
+        "org/kodein"
+    );
+    /** Pre-loaded only if Mixin has not yet been initialized, see {@link #preloadEssential}. */
+    private static final String MIXIN_LIBRARY = "org/spongepowered";
+    /**
+     * Whether pre-loaded classes are only read from our jar once they are actually loaded, rather than all up front.
+     * See {@link LazyResourceCache}.
+     */
+    private static final boolean LAZY_PRELOAD = Boolean.parseBoolean(System.getProperty("essential.loader.preload.lazy", "true"));
 
     private Path ourEssentialPath;
     private URL ourEssentialUrl;
     private URL ourMixinUrl;
+    /** Keys under which {@link JarInspection}s of the jars we added to the classpath can persist their answers. */
+    private final Map<Path, String> inspectionKeys = new HashMap<>();
 
     public EssentialLoader(Path gameDir, String gameVersion) {
         super(gameDir, gameVersion);
     }
 
-    private void deleteEmbeddedStage0(Path downloadedFile) throws IOException {
+    private void deleteEmbeddedStage0(Path downloadedFile, @Nullable PreloadIndex preloadIndex) throws IOException {
         // We need to strip the stage1 loader bundled in mods (to allow them to be dropped directly in the mods
         // folder) because it might be more recent than the version currently on the classpath and as such may prompt
         // an update of stage1 inside a relaunch (failing hard on Windows because the stage1 jar is currently loaded).
@@ -67,7 +92,12 @@ public class EssentialLoader extends EssentialLoaderBase {
         // We also need to strip the corresponding manifest entry because otherwise stage1 might try to load us as a
         // regular Essential-using mod, which won't actually work (Essential will function but it won't appear as a
         // mod in the Mods menu, etc.).
+        // Since this rewrites the whole jar anyway, we also use it to add the pre-load index.
         try (FileSystem fileSystem = FileSystems.newFileSystem(downloadedFile, (ClassLoader) null)) {
+            if (preloadIndex != null) {
+                preloadIndex.write(fileSystem);
+            }
+
             Path stage0Path = fileSystem.getPath("gg", "essential", "loader", "stage0");
             if (Files.exists(stage0Path)) {
                 Delete.recursively(stage0Path);
@@ -90,6 +120,18 @@ public class EssentialLoader extends EssentialLoaderBase {
         }
     }
 
+    private @Nullable PreloadIndex scanPreloadIndex(Path jarFile) {
+        List<String> libraries = new ArrayList<>(PRELOADED_LIBRARIES);
+        libraries.add(MIXIN_LIBRARY);
+        try {
+            return PreloadIndex.scan(jarFile, libraries);
+        } catch (IOException e) {
+            // Not fatal, we'll just have to scan the jar on every boot
+            LOGGER.warn("Failed to build pre-load index for " + jarFile + ":", e);
+            return null;
+        }
+    }
+
     @Override
     protected void loadPlatform() {
         if (ourEssentialPath == null || ourEssentialUrl == null || ourMixinUrl == null) {
@@ -113,7 +155,11 @@ public class EssentialLoader extends EssentialLoaderBase {
             ourMixinUrl = ourEssentialUrl;
         }
 
-        preloadEssential(ourEssentialPath, ourEssentialUrl);
+        long start = System.nanoTime();
+        try (JarInspection jar = inspect(ourEssentialPath, inspectionKeys.get(ourEssentialPath))) {
+            preloadEssential(jar, ourEssentialUrl);
+        }
+        BootTimings.record("stage2.preloadEssential", start);
 
         try {
             injectMixinTweaker();
@@ -156,10 +202,28 @@ public class EssentialLoader extends EssentialLoaderBase {
                 }
 
                 if (!processedMeta.equals(jarMeta)) {
-                    Path tmpFile = Files.createTempFile(processedMainJar.getParent(), "processing", ".jar");
-                    Files.copy(mainJar, tmpFile, StandardCopyOption.REPLACE_EXISTING);
-                    deleteEmbeddedStage0(tmpFile);
-                    jarMeta.writeToJarFile(tmpFile);
+                    // Another game instance sharing our blob store may have already processed the same jar
+                    String alias = jarMeta.getChecksum() != null ? "processed-" + jarMeta.getChecksum() : null;
+                    // (find verifies its content against its hash, we only need to check that it is for the right jar)
+                    Path processedBlob = blobStore.find(alias);
+                    if (processedBlob != null) {
+                        try {
+                            if (!ModJarMetadata.readFromJarFile(processedBlob).equals(jarMeta)) {
+                                processedBlob = null;
+                            }
+                        } catch (IOException e) {
+                            LOGGER.warn("Failed to read stored processed jar metadata", e);
+                            processedBlob = null;
+                        }
+                    }
+
+                    Path tmpFile = null;
+                    if (processedBlob == null) {
+                        tmpFile = Files.createTempFile(processedMainJar.getParent(), "processing", ".jar");
+                        Files.copy(mainJar, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+                        deleteEmbeddedStage0(tmpFile, scanPreloadIndex(tmpFile));
+                        jarMeta.writeToJarFile(tmpFile);
+                    }
 
                     try {
                         Files.deleteIfExists(processedMainJar);
@@ -171,10 +235,17 @@ public class EssentialLoader extends EssentialLoaderBase {
                     // and if not, we need to write to the next higher one.
                     processedMainJar = findNextMostRecentFile(mod.dataDir, fileBaseName, FILE_EXTENSION);
 
-                    Files.move(tmpFile, processedMainJar);
+                    if (processedBlob != null) {
+                        blobStore.link(processedBlob, processedMainJar);
+                    } else {
+                        blobStore.install(tmpFile, processedMainJar, alias);
+                    }
                 }
 
                 mainJar = processedMainJar;
+                if (jarMeta.getChecksum() != null) {
+                    inspectionKeys.put(mainJar, "processed-" + jarMeta.getChecksum());
+                }
             } catch (IOException e) {
                 LOGGER.warn("Failed to post-process downloaded Essential jar:", e);
             }
@@ -206,14 +277,16 @@ public class EssentialLoader extends EssentialLoaderBase {
         ourMixinUrl = url;
     }
 
-    private void preloadEssential(Path path, URL url) {
+    private void preloadEssential(JarInspection jar, URL url) {
         if (System.getProperty(Relaunch.FORCE_PROPERTY, "").equals("early")) {
             if (Relaunch.checkEnabled()) {
                 Relaunch.relaunch(ourMixinUrl);
             }
         }
 
-        String outdatedAsm = isAsmOutdated(url);
+        long start = System.nanoTime();
+        String outdatedAsm = isAsmOutdated(jar);
+        BootTimings.record("stage2.relaunchCheck", start);
         if (outdatedAsm != null) {
             LOGGER.warn("Found an old version of ASM ({}). This may cause issues.", outdatedAsm);
             if (Relaunch.checkEnabled()) {
@@ -283,26 +356,32 @@ public class EssentialLoader extends EssentialLoaderBase {
             @SuppressWarnings("unchecked")
             Set<String> negativeResourceCache = (Set<String>) negativeResourceCacheField.get(Launch.classLoader);
 
-            try (FileSystem fileSystem = FileSystems.newFileSystem(path, null)) {
-                Path[] libs = {
-                    fileSystem.getPath("kotlin"),
-                    fileSystem.getPath("kotlinx", "coroutines"),
-                    fileSystem.getPath("gg", "essential", "universal"),
-                    fileSystem.getPath("gg", "essential", "elementa"),
-                    fileSystem.getPath("gg", "essential", "vigilance"),
-                    fileSystem.getPath("codes", "som", "anthony", "koffee"),
-                    fileSystem.getPath("org", "kodein"),
-                };
-                for (Path libPath : libs) {
-                    preloadLibrary(path, libPath, resourceCache, negativeResourceCache);
-                }
+            // The lazy cache needs its own handle on our jar, the inspection's one is closed once we are done here
+            LazyResourceCache lazyResourceCache = null;
+            if (LAZY_PRELOAD && !(resourceCache instanceof LazyResourceCache)) {
+                lazyResourceCache = new LazyResourceCache(resourceCache, new ZipFile(jar.getPath().toFile()));
+                resourceCacheField.set(Launch.classLoader, lazyResourceCache);
+                resourceCache = lazyResourceCache;
+            }
 
-                // Mixin is primarily a tweaker lib, so the chances of it having already been loaded by this point
-                // are not nearly as small as non-tweaker libs. So, to reduce the chance of instability caused by
-                // incompatible implementation classes, we only force our version if it is not already initialized.
-                if (Launch.blackboard.get("mixin.initialised") == null) {
-                    preloadLibrary(path, fileSystem.getPath("org", "spongepowered"), resourceCache, negativeResourceCache);
-                }
+            ZipFile zipFile = jar.getZipFile();
+            PreloadIndex index = PreloadIndex.read(zipFile);
+            if (index == null) {
+                LOGGER.debug("No pre-load index found in {}, scanning it instead.", zipFile.getName());
+            }
+            for (String libPath : PRELOADED_LIBRARIES) {
+                preloadLibrary(zipFile, index, libPath, resourceCache, negativeResourceCache);
+            }
+
+            // Mixin is primarily a tweaker lib, so the chances of it having already been loaded by this point
+            // are not nearly as small as non-tweaker libs. So, to reduce the chance of instability caused by
+            // incompatible implementation classes, we only force our version if it is not already initialized.
+            if (Launch.blackboard.get("mixin.initialised") == null) {
+                preloadLibrary(zipFile, index, MIXIN_LIBRARY, resourceCache, negativeResourceCache);
+            }
+
+            if (lazyResourceCache != null) {
+                LOGGER.debug("{} pre-loaded classes will be read on demand.", lazyResourceCache.lazyCount());
             }
 
             if (Launch.classLoader.getClassBytes("pl.asie.foamfix.coremod.FoamFixCore") != null) {
@@ -310,19 +389,18 @@ public class EssentialLoader extends EssentialLoaderBase {
                 // To work around that, we preempt its replacement and put in a map which will throw an exception when
                 // iterated.
                 LOGGER.info("Detected FoamFix, locking LaunchClassLoader.resourceCache");
-                resourceCacheField.set(Launch.classLoader, new ConcurrentHashMap<String,byte[]>(resourceCache) {
-                    // FoamFix will call this before overwriting the resourceCache field
-                    @Override
-                    public Set<Entry<String, byte[]>> entrySet() {
-                        throw new RuntimeException("Suppressing FoamFix LaunchWrapper weak resource cache.") {
-                            // It'll then catch the exception and print it, which we can make less noisy.
-                            @Override
-                            public void printStackTrace() {
-                                LOGGER.info(this.getMessage());
-                            }
-                        };
-                    }
-                });
+                if (lazyResourceCache != null) {
+                    // Copying it would lose all entries not yet read, but it's our own map anyway
+                    lazyResourceCache.refuseIteration(EssentialLoader::suppressFoamFix);
+                } else {
+                    resourceCacheField.set(Launch.classLoader, new ConcurrentHashMap<String,byte[]>(resourceCache) {
+                        // FoamFix will call this before overwriting the resourceCache field
+                        @Override
+                        public Set<Entry<String, byte[]>> entrySet() {
+                            throw suppressFoamFix();
+                        }
+                    });
+                }
             }
         } catch (RelaunchRequest relaunchRequest) {
             Relaunch.relaunch(url);
@@ -331,46 +409,114 @@ public class EssentialLoader extends EssentialLoaderBase {
         }
     }
 
-    private void preloadLibrary(Path jarPath, Path libPath, Map<String, byte[]> resourceCache, Set<String> negativeResourceCache) throws IOException {
-        if (Files.notExists(libPath)) {
+    private static RuntimeException suppressFoamFix() {
+        return new RuntimeException("Suppressing FoamFix LaunchWrapper weak resource cache.") {
+            // It'll then catch the exception and print it, which we can make less noisy.
+            @Override
+            public void printStackTrace() {
+                LOGGER.info(this.getMessage());
+            }
+        };
+    }
+
+    private void preloadLibrary(ZipFile jar, PreloadIndex index, String libPath, Map<String, byte[]> resourceCache, Set<String> negativeResourceCache) throws IOException {
+        final String SUFFIX = ".class";
+        List<PreloadIndex.Entry> entries = index != null ? index.get(libPath) : null;
+        if (entries == null) {
+            entries = PreloadIndex.scan(jar, libPath);
+        }
+        if (entries.isEmpty()) {
             LOGGER.debug("Not pre-loading {} because it does not exist.", libPath);
             return;
         }
 
-        LOGGER.debug("Pre-loading {} from {}..", libPath, jarPath);
+        LOGGER.debug("Pre-loading {} from {}..", libPath, jar.getName());
         long start = System.nanoTime();
 
-        Files.walkFileTree(libPath, new SimpleFileVisitor<Path>() {
-            private static final String SUFFIX = ".class";
-            private boolean warned;
+        boolean lazy = resourceCache instanceof LazyResourceCache;
+        List<String> conflicts = new ArrayList<>();
+        for (PreloadIndex.Entry entry : entries) {
+            String file = entry.name;
+            String name = file.substring(0, file.length() - SUFFIX.length()).replace('/', '.');
+            negativeResourceCache.remove(name);
+
+            // Comparing checksums rather than content, so we do not have to read ours
+            byte[] oldBytes = resourceCache.get(name);
+            if (oldBytes != null) {
+                if (PreloadIndex.crc(oldBytes) == entry.crc) {
+                    continue; // already got the same class, no need to replace it
+                }
+                conflicts.add(file);
+            }
 
-            @Override
-            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
-                if (path.getFileName().toString().endsWith(SUFFIX)) {
-                    String file = path.toString().substring(1);
-                    String name = file.substring(0, file.length() - SUFFIX.length()).replace('/', '.');
-                    byte[] bytes = Files.readAllBytes(path);
-                    byte[] oldBytes = resourceCache.put(name, bytes);
-                    if (oldBytes != null && !Arrays.equals(oldBytes, bytes) && !warned) {
-                        warned = true;
-                        LOGGER.warn("Found potentially conflicting version of {} already loaded. This may cause issues.", libPath);
-                        LOGGER.warn("First conflicting class: {}", name);
-                        try {
-                            LOGGER.warn("Likely source: {}", Launch.classLoader.findResource(file));
-                        } catch (Throwable t) {
-                            LOGGER.warn("Unable to determine likely source:", t);
-                        }
-                        if (Relaunch.checkEnabled()) {
-                            throw new RelaunchRequest();
-                        }
-                    }
-                    negativeResourceCache.remove(name);
+            if (lazy) {
+                // No need to read it until it is actually loaded
+                ((LazyResourceCache) resourceCache).putLazy(name, file);
+            } else {
+                ZipEntry zipEntry = jar.getEntry(file);
+                if (zipEntry == null) {
+                    throw new IOException("Pre-load index lists " + file + " but there is no such entry");
                 }
-                return FileVisitResult.CONTINUE;
+                resourceCache.put(name, readEntry(jar, zipEntry));
             }
-        });
+        }
 
         LOGGER.debug("Done after {}ns.", System.nanoTime() - start);
+
+        if (!conflicts.isEmpty()) {
+            reportConflicts(libPath, entries.size(), conflicts);
+            if (Relaunch.checkEnabled()) {
+                throw new RelaunchRequest();
+            }
+        }
+    }
+
+    private static void reportConflicts(String libPath, int classCount, List<String> conflicts) {
+        LOGGER.warn("Found potentially conflicting version of {} already loaded ({} of {} classes differ). This may cause issues.",
+            libPath, conflicts.size(), classCount);
+        String firstConflict = conflicts.get(0);
+        LOGGER.warn("First conflicting class: {}", firstConflict.substring(0, firstConflict.length() - ".class".length()).replace('/', '.'));
+
+        // Group the conflicting classes by the jar they (likely) come from
+        Map<String, Integer> sources = new LinkedHashMap<>();
+        for (String file : conflicts) {
+            String source;
+            try {
+                URL url = Launch.classLoader.findResource(file);
+                source = url == null ? "unknown" : jarOf(url);
+            } catch (Throwable t) {
+                LOGGER.debug("Unable to determine source of " + file + ":", t);
+                source = "unknown";
+            }
+            sources.merge(source, 1, Integer::sum);
+        }
+        LOGGER.warn("Likely sources:");
+        for (Map.Entry<String, Integer> source : sources.entrySet()) {
+            LOGGER.warn("  - {} ({} classes)", source.getKey(), source.getValue());
+        }
+    }
+
+    private static String jarOf(URL url) {
+        String str = url.toString();
+        if (url.getProtocol().equals("jar")) {
+            int separator = str.indexOf("!/");
+            if (separator != -1) {
+                return str.substring("jar:".length(), separator);
+            }
+        }
+        return str;
+    }
+
+    static byte[] readEntry(ZipFile jar, ZipEntry entry) throws IOException {
+        try (InputStream in = jar.getInputStream(entry)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
     }
 
     // Production requires usage of the MixinTweaker. Simply calling MixinBootstrap.init() will not always work, even
@@ -407,7 +553,9 @@ public class EssentialLoader extends EssentialLoaderBase {
     protected void doInitialize() {
         detectStage0Tweaker();
 
+        long start = System.nanoTime();
         String outdatedMixin = isMixinOutdated();
+        BootTimings.record("stage2.relaunchCheck", start);
         if (outdatedMixin != null) {
             LOGGER.warn("Found an old version of Mixin ({}). This may cause issues.", outdatedMixin);
             if (Relaunch.checkEnabled()) {
@@ -439,7 +587,10 @@ public class EssentialLoader extends EssentialLoaderBase {
 
     private String isMixinOutdated() {
         String loadedVersion = String.valueOf(Launch.blackboard.get("mixin.initialised"));
-        String bundledVersion = Versions.getMixinVersion(ourMixinUrl);
+        String bundledVersion;
+        try (JarInspection jar = inspect(ourEssentialPath, inspectionKeys.get(ourEssentialPath))) {
+            bundledVersion = Versions.getMixinVersion(jar);
+        }
         LOGGER.debug("Found Mixin {} loaded, we bundle {}", loadedVersion, bundledVersion);
         if (Versions.compare("mixin", loadedVersion, bundledVersion) < 0) {
             return loadedVersion;
@@ -448,9 +599,9 @@ public class EssentialLoader extends EssentialLoaderBase {
         }
     }
 
-    private String isAsmOutdated(URL ourUrl) {
+    private String isAsmOutdated(JarInspection ourJar) {
         String loadedVersion = org.objectweb.asm.ClassWriter.class.getPackage().getImplementationVersion();
-        String bundledVersion = Versions.getAsmVersion(ourUrl);
+        String bundledVersion = Versions.getAsmVersion(ourJar);
         LOGGER.debug("Found ASM {} loaded, we bundle {}", loadedVersion, bundledVersion);
         if (Versions.compare("ASM", loadedVersion, bundledVersion) < 0) {
             return loadedVersion;
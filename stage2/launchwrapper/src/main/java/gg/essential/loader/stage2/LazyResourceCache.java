@@ -0,0 +1,116 @@
+package gg.essential.loader.stage2;
+
+import net.minecraft.launchwrapper.LaunchClassLoader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A replacement for the {@link LaunchClassLoader} resource cache which, in addition to the class bytes it holds like
+ * the original one, knows about classes in a jar which are only read from that jar once they are first requested.
+ *
+ * The launch class loader only ever asks its resource cache whether it contains a class and, if so, for its bytes, so
+ * to it, such lazy entries look exactly like eagerly pre-loaded ones. But only the classes which are actually loaded
+ * ever need to be read and kept in memory.
+ *
+ * Iterating the map (and anything else not overwritten here) only sees the entries which have been read already.
+ */
+class LazyResourceCache extends ConcurrentHashMap<String, byte[]> {
+    private static final Logger LOGGER = LogManager.getLogger(LazyResourceCache.class);
+
+    private final ZipFile jar;
+    /** Class name to jar entry name, for all classes which have not yet been read. */
+    private final Map<String, String> lazyEntries = new ConcurrentHashMap<>();
+    private volatile Supplier<RuntimeException> iterationRefusal;
+
+    LazyResourceCache(Map<String, byte[]> entries, ZipFile jar) {
+        this.jar = jar;
+        putAll(entries);
+    }
+
+    /**
+     * Registers the given class to be read from the given entry of our jar when it is first requested, replacing any
+     * bytes which may already be cached for it.
+     */
+    void putLazy(String name, String entryName) {
+        super.remove(name);
+        lazyEntries.put(name, entryName);
+    }
+
+    int lazyCount() {
+        return lazyEntries.size();
+    }
+
+    /**
+     * Makes all future attempts to iterate this map throw the exception supplied by the given supplier.
+     */
+    void refuseIteration(Supplier<RuntimeException> refusal) {
+        this.iterationRefusal = refusal;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        // Must check the lazy entries first, the super implementation goes through `get` which would read them
+        return lazyEntries.containsKey(key) || super.containsKey(key);
+    }
+
+    @Override
+    public byte[] get(Object key) {
+        byte[] bytes = super.get(key);
+        if (bytes != null) {
+            return bytes;
+        }
+
+        String entryName = lazyEntries.get(key);
+        if (entryName == null) {
+            return null;
+        }
+        try {
+            bytes = readEntry(entryName);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read " + entryName + " from " + jar.getName() + ":", e);
+            return null;
+        }
+
+        // Only the first reader gets to store its bytes, so everyone gets the same array
+        byte[] existing = super.putIfAbsent((String) key, bytes);
+        lazyEntries.remove(key);
+        return existing != null ? existing : bytes;
+    }
+
+    @Override
+    public byte[] put(String key, byte[] value) {
+        lazyEntries.remove(key);
+        return super.put(key, value);
+    }
+
+    @Override
+    public byte[] remove(Object key) {
+        lazyEntries.remove(key);
+        return super.remove(key);
+    }
+
+    @Override
+    public Set<Entry<String, byte[]>> entrySet() {
+        Supplier<RuntimeException> refusal = this.iterationRefusal;
+        if (refusal != null) {
+            throw refusal.get();
+        }
+        return super.entrySet();
+    }
+
+    private byte[] readEntry(String entryName) throws IOException {
+        ZipEntry entry = jar.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("Entry no longer exists");
+        }
+        return EssentialLoader.readEntry(jar, entry);
+    }
+}
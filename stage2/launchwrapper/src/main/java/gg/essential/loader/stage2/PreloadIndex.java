@@ -0,0 +1,153 @@
+package gg.essential.loader.stage2;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lists the class files of each of the libraries which {@link EssentialLoader} pre-loads, together with their CRC-32.
+ *
+ * Written into the processed Essential jar when it is created, so pre-loading does not have to go through all entries
+ * of the jar once per library on every boot, and so we can tell whether an already cached class is the same as ours
+ * without reading ours.
+ *
+ * The format is a {@link DataOutputStream} of
+ * <pre>{@code
+ * int version, short libraryCount, libraryCount * (UTF path, int classCount, classCount * (UTF name, int crc))
+ * }</pre>
+ * where each name is relative to its library's path.
+ */
+class PreloadIndex {
+    private static final Logger LOGGER = LogManager.getLogger(PreloadIndex.class);
+    static final String PATH = "META-INF/essential-loader/preload.idx";
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".class";
+
+    private final Map<String, List<Entry>> libraries;
+
+    private PreloadIndex(Map<String, List<Entry>> libraries) {
+        this.libraries = libraries;
+    }
+
+    /**
+     * Returns the classes of the given library, or {@code null} if the index does not cover it.
+     */
+    @Nullable List<Entry> get(String libPath) {
+        return libraries.get(libPath);
+    }
+
+    /**
+     * Lists the classes of the given library by going through all entries of the given jar.
+     */
+    static List<Entry> scan(ZipFile jar, String libPath) {
+        String prefix = libPath + "/";
+        return jar.stream()
+            .filter(entry -> !entry.isDirectory() && entry.getName().startsWith(prefix) && entry.getName().endsWith(SUFFIX))
+            .map(entry -> new Entry(entry.getName(), (int) entry.getCrc()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the index from the given jar, or returns {@code null} if it does not have one (or it is unusable).
+     */
+    static @Nullable PreloadIndex read(ZipFile jar) {
+        ZipEntry indexEntry = jar.getEntry(PATH);
+        if (indexEntry == null) {
+            return null;
+        }
+        try (InputStream in = jar.getInputStream(indexEntry)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            int version = data.readInt();
+            if (version != VERSION) {
+                LOGGER.debug("Ignoring pre-load index of unsupported version {} in {}", version, jar.getName());
+                return null;
+            }
+            int libraryCount = data.readUnsignedShort();
+            Map<String, List<Entry>> libraries = new HashMap<>();
+            for (int i = 0; i < libraryCount; i++) {
+                String libPath = data.readUTF();
+                int classCount = data.readInt();
+                List<Entry> entries = new ArrayList<>(classCount);
+                for (int j = 0; j < classCount; j++) {
+                    entries.add(new Entry(libPath + "/" + data.readUTF(), data.readInt()));
+                }
+                libraries.put(libPath, entries);
+            }
+            return new PreloadIndex(libraries);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read pre-load index from " + jar.getName() + ":", e);
+            return null;
+        }
+    }
+
+    /**
+     * Builds an index of the given libraries in the given jar.
+     */
+    static PreloadIndex scan(Path jarFile, List<String> libPaths) throws IOException {
+        Map<String, List<Entry>> libraries = new LinkedHashMap<>();
+        try (ZipFile jar = new ZipFile(jarFile.toFile())) {
+            for (String libPath : libPaths) {
+                libraries.put(libPath, scan(jar, libPath));
+            }
+        }
+        return new PreloadIndex(libraries);
+    }
+
+    /**
+     * Writes this index into the jar of the given (zip) file system.
+     */
+    void write(FileSystem fileSystem) throws IOException {
+        Path indexPath = fileSystem.getPath(PATH);
+        Files.createDirectories(indexPath.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+            out.writeInt(VERSION);
+            out.writeShort(libraries.size());
+            for (Map.Entry<String, List<Entry>> library : libraries.entrySet()) {
+                String libPath = library.getKey();
+                out.writeUTF(libPath);
+                out.writeInt(library.getValue().size());
+                for (Entry entry : library.getValue()) {
+                    out.writeUTF(entry.name.substring(libPath.length() + 1));
+                    out.writeInt(entry.crc);
+                }
+            }
+        }
+    }
+
+    static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    static class Entry {
+        /** Name of the jar entry. */
+        final String name;
+        /** CRC-32 of the entry's uncompressed content. */
+        final int crc;
+
+        Entry(String name, int crc) {
+            this.name = name;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package gg.essential.loader.stage2.relaunch;
+
+import com.google.common.io.ByteStreams;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * Knows which entries of a class path contain which packages, so classes can be read straight from the few entries
+ * which may contain them, rather than having to ask every entry in order (as {@link java.net.URLClassLoader} does).
+ *
+ * Jars are opened once, when the index is built, and stay open (together with their manifest and code source) until
+ * the index is closed.
+ */
+class ClassPathIndex implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ClassPathIndex.class);
+    private static final String SUFFIX = ".class";
+
+    private final List<Source> sources;
+    /** Package (in internal form, e.g. `a/b`) to the sources which contain classes in it, in class path order. */
+    private final Map<String, List<Source>> packages = new HashMap<>();
+
+    private ClassPathIndex(List<Source> sources) {
+        this.sources = sources;
+        for (Source source : sources) {
+            for (String pkg : source.packages) {
+                packages.computeIfAbsent(pkg, __ -> new ArrayList<>(1)).add(source);
+            }
+        }
+    }
+
+    /**
+     * Indexes the given class path, or returns {@code null} if any of its entries cannot be indexed, in which case the
+     * caller needs to fall back to searching it in order.
+     */
+    static @Nullable ClassPathIndex build(URL[] urls) {
+        List<Source> sources = new ArrayList<>(urls.length);
+        try {
+            for (URL url : urls) {
+                Source source = Source.open(url);
+                if (source == null) {
+                    LOGGER.debug("Cannot index {}, falling back to regular class path lookup.", url);
+                    closeAll(sources);
+                    return null;
+                }
+                sources.add(source);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to index class path, falling back to regular class path lookup:", e);
+            closeAll(sources);
+            return null;
+        }
+        return new ClassPathIndex(sources);
+    }
+
+    /**
+     * Reads the given class from the first source which contains it, or returns {@code null} if none does.
+     */
+    @Nullable Resource findClass(String name) throws IOException {
+        String path = name.replace('.', '/') + SUFFIX;
+        int pkgIndex = path.lastIndexOf('/');
+        List<Source> candidates = packages.get(pkgIndex == -1 ? "" : path.substring(0, pkgIndex));
+        if (candidates == null) {
+            return null;
+        }
+        for (Source source : candidates) {
+            byte[] bytes = source.read(path);
+            if (bytes != null) {
+                return new Resource(source, bytes);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        closeAll(sources);
+    }
+
+    private static void closeAll(List<Source> sources) {
+        for (Source source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close " + source.url + ":", e);
+            }
+        }
+    }
+
+    static class Resource {
+        final Source source;
+        final byte[] bytes;
+
+        private Resource(Source source, byte[] bytes) {
+            this.source = source;
+            this.bytes = bytes;
+        }
+    }
+
+    static abstract class Source implements Closeable {
+        final URL url;
+        final CodeSource codeSource;
+        final List<String> packages = new ArrayList<>();
+
+        private Source(URL url) {
+            this.url = url;
+            this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+        }
+
+        private static @Nullable Source open(URL url) throws Exception {
+            if (!"file".equals(url.getProtocol())) {
+                return null;
+            }
+            Path path = Paths.get(url.toURI());
+            if (Files.isDirectory(path)) {
+                return new DirectorySource(url, path);
+            } else if (Files.isRegularFile(path)) {
+                return new JarSource(url, path.toFile());
+            } else {
+                return new EmptySource(url);
+            }
+        }
+
+        /** The manifest of this source, if it has one. */
+        abstract @Nullable Manifest getManifest();
+
+        /** Reads the given entry, or returns {@code null} if this source does not contain it. */
+        abstract @Nullable byte[] read(String path) throws IOException;
+    }
+
+    private static class JarSource extends Source {
+        private final JarFile jar;
+        private final Manifest manifest;
+
+        private JarSource(URL url, File file) throws IOException {
+            super(url);
+            this.jar = new JarFile(file, false);
+            this.manifest = jar.getManifest();
+
+            jar.stream()
+                .map(JarEntry::getName)
+                .filter(name -> name.endsWith(SUFFIX))
+                .map(name -> name.lastIndexOf('/') == -1 ? "" : name.substring(0, name.lastIndexOf('/')))
+                .distinct()
+                .forEach(packages::add);
+        }
+
+        @Override
+        @Nullable Manifest getManifest() {
+            return manifest;
+        }
+
+        @Override
+        byte[] read(String path) throws IOException {
+            JarEntry entry = jar.getJarEntry(path);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                return ByteStreams.toByteArray(in);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            jar.close();
+        }
+    }
+
+    // Only in strange setups (like our integration tests)
+    private static class DirectorySource extends Source {
+        private final Path root;
+
+        private DirectorySource(URL url, Path root) throws IOException {
+            super(url);
+            this.root = root;
+
+            try (Stream<Path> stream = Files.walk(root)) {
+                stream
+                    .filter(file -> file.getFileName() != null && file.getFileName().toString().endsWith(SUFFIX))
+                    .map(file -> root.relativize(file.getParent()).toString().replace(File.separatorChar, '/'))
+                    .distinct()
+                    .forEach(packages::add);
+            }
+        }
+
+        @Override
+        @Nullable Manifest getManifest() {
+            return null;
+        }
+
+        @Override
+        byte[] read(String path) throws IOException {
+            Path file = root.resolve(path);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            return Files.readAllBytes(file);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Class path entries which do not exist are simply ignored by URLClassLoader, so we do the same
+    private static class EmptySource extends Source {
+        private EmptySource(URL url) {
+            super(url);
+        }
+
+        @Override
+        @Nullable Manifest getManifest() {
+            return null;
+        }
+
+        @Override
+        byte[] read(String path) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
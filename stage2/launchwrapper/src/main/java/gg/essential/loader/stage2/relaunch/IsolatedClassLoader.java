@@ -8,9 +8,12 @@ import java.net.URLClassLoader;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A class loader which strongly prefers loading its own instance of a class rather than using the one from its parent.
@@ -37,7 +40,20 @@ class IsolatedClassLoader extends URLClassLoader {
             "org.apache.logging.slf4j." // Needs to be loaded by us because it references code from `org.slf4j`, which is not excluded, leading to duplicate class definitions.
     );
 
-    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+    /** {@link #exclusions} and {@link #explicitInclusions}, by package segment. */
+    private final PackageTrie exclusionTrie = new PackageTrie(exclusions, explicitInclusions);
+
+    /** Whether classes in a given package are excluded, so we only need to consult the trie once per package. */
+    private final Map<String, Boolean> packageExclusions = new ConcurrentHashMap<>();
+
+    /**
+     * Classes which we have delegated to our parent.
+     * Classes which we define ourselves do not need to be stored because {@link #findLoadedClass(String)} already
+     * finds them, but it only finds classes of other loaders if the JVM happened to record us as an initiating loader.
+     */
+    private final Map<String, Class<?>> delegatedClasses = new ConcurrentHashMap<>();
+
+    private final Metrics metrics = new Metrics();
 
     /**
      * The conceptual (but not actual) parent of this class loader.
@@ -57,15 +73,26 @@ class IsolatedClassLoader extends URLClassLoader {
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
         // Fast path
-        Class<?> cls = classes.get(name);
+        Class<?> cls = findLoadedClass(name);
+        if (cls != null) {
+            return cls;
+        }
+        cls = delegatedClasses.get(name);
         if (cls != null) {
             return cls;
         }
 
         // For excluded classes, use the parent class loader
         if (isClassExcluded(name)) {
-            cls = delegateParent.loadClass(name);
-            classes.put(name, cls);
+            long start = metrics.start();
+            try {
+                cls = delegateParent.loadClass(name);
+            } finally {
+                metrics.end(start);
+            }
+            if (delegatedClasses.putIfAbsent(name, cls) == null) {
+                metrics.delegatedClasses.increment();
+            }
             return cls;
         }
 
@@ -78,28 +105,32 @@ class IsolatedClassLoader extends URLClassLoader {
 
             // If the have not yet defined the class, let's do that
             if (cls == null) {
-                cls = findClassImpl(name);
+                long start = metrics.start();
+                try {
+                    cls = findClassImpl(name);
+                } finally {
+                    metrics.end(start);
+                }
+                metrics.definedClasses.increment();
             }
 
-            // Class loaded successfully, store it in our map so we can take the fast path in the future
-            classes.put(name, cls);
-
             return cls;
         }
     }
 
     private boolean isClassExcluded(String name) {
-        for (String inclusion : explicitInclusions) {
-            if (name.startsWith(inclusion)) {
-                return false;
-            }
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot == -1) {
+            return false; // default package
         }
-        for (String exclusion : exclusions) {
-            if (name.startsWith(exclusion)) {
-                return true;
-            }
-        }
-        return false;
+        return packageExclusions.computeIfAbsent(name.substring(0, lastDot), exclusionTrie::isExcluded);
+    }
+
+    /**
+     * Returns how many classes this loader has defined and delegated so far, and how long that took.
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     // We redirect this method to our loadClass (which checks the parent for exclusions) because our loadClass is not
@@ -141,6 +172,94 @@ class IsolatedClassLoader extends URLClassLoader {
         ));
     }
 
+    /**
+     * A trie of package segments, each of which may be marked as excluded or (explicitly) included.
+     * The deepest mark on the path of a package decides, which, given inclusions are always more specific than the
+     * exclusions they carve out of, is the same as inclusions taking precedence.
+     */
+    private static class PackageTrie {
+        private final Map<String, PackageTrie> children = new HashMap<>();
+        private Boolean excluded;
+
+        PackageTrie(List<String> exclusions, List<String> inclusions) {
+            exclusions.forEach(prefix -> node(prefix).excluded = true);
+            inclusions.forEach(prefix -> node(prefix).excluded = false);
+        }
+
+        private PackageTrie() {
+        }
+
+        private PackageTrie node(String prefix) {
+            if (!prefix.endsWith(".")) {
+                throw new IllegalArgumentException("Prefix must end with a dot: " + prefix);
+            }
+            PackageTrie node = this;
+            for (String segment : prefix.substring(0, prefix.length() - 1).split("\\.")) {
+                node = node.children.computeIfAbsent(segment, __ -> new PackageTrie());
+            }
+            return node;
+        }
+
+        boolean isExcluded(String packageName) {
+            boolean excluded = false;
+            PackageTrie node = this;
+            int start = 0;
+            while (start <= packageName.length()) {
+                int end = packageName.indexOf('.', start);
+                if (end == -1) {
+                    end = packageName.length();
+                }
+                node = node.children.get(packageName.substring(start, end));
+                if (node == null) {
+                    break;
+                }
+                if (node.excluded != null) {
+                    excluded = node.excluded;
+                }
+                start = end + 1;
+            }
+            return excluded;
+        }
+    }
+
+    public static class Metrics {
+        private final LongAdder definedClasses = new LongAdder();
+        private final LongAdder delegatedClasses = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        /** How deep the current thread is in nested loads, so the time of those is only counted once. */
+        private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+        private long start() {
+            depth.get()[0]++;
+            return System.nanoTime();
+        }
+
+        private void end(long startNanos) {
+            if (--depth.get()[0] == 0) {
+                nanos.add(System.nanoTime() - startNanos);
+            }
+        }
+
+        public long getDefinedClasses() {
+            return definedClasses.sum();
+        }
+
+        public long getDelegatedClasses() {
+            return delegatedClasses.sum();
+        }
+
+        /** Wall time threads have spent loading classes which were not yet loaded, including reading and transforming them. */
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("defined %d and delegated %d classes in %dms",
+                getDefinedClasses(), getDelegatedClasses(), TimeUnit.NANOSECONDS.toMillis(getNanos()));
+        }
+    }
+
     /**
      * We use an empty class loader as the actual parent because using null will use the system class loader and there
      * is plenty of stuff in there.
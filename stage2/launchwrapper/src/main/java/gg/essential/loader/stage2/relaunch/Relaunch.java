@@ -82,6 +82,7 @@ public class Relaunch {
         // Clean up certain global state
         cleanupForRelaunch();
 
+        Thread metricsHook = null;
         try {
             // Get the system class loader (in prod, this will be the actual system class loader, in tests it will be
             // the IsolatedLaunch classloader), we can rely on it being a URLClassLoader cause Launch does the same.
@@ -116,6 +117,10 @@ public class Relaunch {
 
             RelaunchClassLoader relaunchClassLoader = new RelaunchClassLoader(urls.toArray(new URL[0]), systemClassLoader);
 
+            // The game exits via System.exit, so this is the only way for us to report once it is done
+            metricsHook = new Thread(() -> LOGGER.debug("Re-launch class loader {}", relaunchClassLoader.getMetrics()));
+            Runtime.getRuntime().addShutdownHook(metricsHook);
+
             List<String> args = new ArrayList<>(LaunchArgs.guessLaunchArgs());
             String main = args.remove(0);
 
@@ -127,6 +132,11 @@ public class Relaunch {
         } catch (InvocationTargetException e) {
             throw new RuntimeException(e);
         } finally {
+            if (metricsHook != null) {
+                Runtime.getRuntime().removeShutdownHook(metricsHook);
+                metricsHook.run();
+            }
+
             // Clear marker. This only relevant for our tests, production calls System.exit and never returns.
             System.clearProperty(HAPPENED_PROPERTY);
         }
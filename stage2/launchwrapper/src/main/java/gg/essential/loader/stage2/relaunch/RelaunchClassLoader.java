@@ -2,6 +2,7 @@ package gg.essential.loader.stage2.relaunch;
 
 import com.google.common.io.ByteStreams;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
@@ -16,38 +17,64 @@ class RelaunchClassLoader extends IsolatedClassLoader {
 
     private final BiFunction<String, byte[], byte[]> transformer;
 
+    /**
+     * Index of the class path we were constructed with, or {@code null} if it could not be indexed.
+     * Anything not found in it (e.g. because it was added later via {@link #addURL(URL)}, as FML and our stage0 do for
+     * tweaker jars) is still looked up via getResource.
+     */
+    private final ClassPathIndex index;
+
     public RelaunchClassLoader(URL[] urls, ClassLoader parent) {
         super(urls, parent);
 
         this.transformer = new LegacyRelaunchTransformer();
+        this.index = ClassPathIndex.build(urls);
     }
 
     @Override
     protected Class<?> findClassImpl(String name) throws ClassNotFoundException {
+        ClassPathIndex.Resource resource = null;
+        if (index != null) {
+            try {
+                resource = index.findClass(name);
+            } catch (Exception e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+
         URL jarUrl;
         Manifest jarManifest;
+        CodeSource codeSource;
         byte[] bytes;
-        try {
-            URL url = getResource(name.replace('.', '/') + ".class");
-            if (url == null) {
-                throw new ClassNotFoundException(name);
-            }
-            URLConnection urlConnection = url.openConnection();
-            if (urlConnection instanceof JarURLConnection) {
-                // usually the case
-                JarURLConnection jarConnection = (JarURLConnection) urlConnection;
-                jarUrl = jarConnection.getJarFileURL();
-                jarManifest = jarConnection.getManifest();
-            } else {
-                // only in strange setups (like our integration tests), just use some url as fallback
-                jarUrl = url;
-                jarManifest = null;
-            }
-            try (InputStream in = urlConnection.getInputStream()) {
-                bytes = ByteStreams.toByteArray(in);
+        if (resource != null) {
+            jarUrl = resource.source.url;
+            jarManifest = resource.source.getManifest();
+            codeSource = resource.source.codeSource;
+            bytes = resource.bytes;
+        } else {
+            try {
+                URL url = getResource(name.replace('.', '/') + ".class");
+                if (url == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                URLConnection urlConnection = url.openConnection();
+                if (urlConnection instanceof JarURLConnection) {
+                    // usually the case
+                    JarURLConnection jarConnection = (JarURLConnection) urlConnection;
+                    jarUrl = jarConnection.getJarFileURL();
+                    jarManifest = jarConnection.getManifest();
+                } else {
+                    // only in strange setups (like our integration tests), just use some url as fallback
+                    jarUrl = url;
+                    jarManifest = null;
+                }
+                try (InputStream in = urlConnection.getInputStream()) {
+                    bytes = ByteStreams.toByteArray(in);
+                }
+            } catch (Exception e) {
+                throw new ClassNotFoundException(name, e);
             }
-        } catch (Exception e) {
-            throw new ClassNotFoundException(name, e);
+            codeSource = new CodeSource(jarUrl, (CodeSigner[]) null);
         }
 
         // If the class has a package, define that based on the manifest
@@ -68,6 +95,14 @@ class RelaunchClassLoader extends IsolatedClassLoader {
 
         bytes = transformer.apply(name, bytes);
 
-        return defineClass(name, bytes, 0, bytes.length, new CodeSource(jarUrl, (CodeSigner[]) null));
+        return defineClass(name, bytes, 0, bytes.length, codeSource);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+        super.close();
     }
 }
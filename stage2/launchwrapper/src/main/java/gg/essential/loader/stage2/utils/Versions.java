@@ -1,22 +1,17 @@
 package gg.essential.loader.stage2.utils;
 
+import gg.essential.loader.stage2.util.JarInspection;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Collections;
+import java.util.zip.ZipEntry;
 
 import static gg.essential.loader.stage2.EssentialLoader.LOGGER;
-import static gg.essential.loader.stage2.EssentialLoaderBase.asJar;
 
 public class Versions {
     public static int compare(String what, String left, String right) {
@@ -57,39 +52,47 @@ public class Versions {
         return numbers;
     }
 
-    public static String getMixinVersion(URL jarUrl) {
-        try (FileSystem fileSystem = FileSystems.newFileSystem(asJar(jarUrl.toURI()), Collections.emptyMap())) {
-            Path bootstrapPath = fileSystem.getPath("org", "spongepowered", "asm", "launch", "MixinBootstrap.class");
-            try (InputStream inputStream = Files.newInputStream(bootstrapPath)) {
-                ClassReader reader = new ClassReader(inputStream);
-                ClassNode classNode = new ClassNode(Opcodes.ASM5);
-                reader.accept(classNode, 0);
-                for (FieldNode field : classNode.fields) {
-                    if (field.name.equals("VERSION")) {
-                        return String.valueOf(field.value);
+    public static String getMixinVersion(JarInspection jar) {
+        try {
+            return jar.get("mixinVersion", zip -> {
+                ZipEntry bootstrapEntry = zip.getEntry("org/spongepowered/asm/launch/MixinBootstrap.class");
+                if (bootstrapEntry == null) {
+                    throw new FileNotFoundException("MixinBootstrap.class");
+                }
+                try (InputStream inputStream = zip.getInputStream(bootstrapEntry)) {
+                    ClassReader reader = new ClassReader(inputStream);
+                    ClassNode classNode = new ClassNode(Opcodes.ASM5);
+                    reader.accept(classNode, 0);
+                    for (FieldNode field : classNode.fields) {
+                        if (field.name.equals("VERSION")) {
+                            return String.valueOf(field.value);
+                        }
                     }
+                    LOGGER.warn("Failed to determine version of bundled mixin: no VERSION field in MixinBootstrap");
                 }
-                LOGGER.warn("Failed to determine version of bundled mixin: no VERSION field in MixinBootstrap");
-            }
-        } catch (URISyntaxException | IOException e) {
+                return null;
+            });
+        } catch (IOException e) {
             LOGGER.warn("Failed to determine version of bundled mixin:", e);
         }
         return null;
     }
 
-    public static String getAsmVersion(URL jarUrl) {
-        try (FileSystem fileSystem = FileSystems.newFileSystem(asJar(jarUrl.toURI()), Collections.emptyMap())) {
-            // There is no nice way to get the version while we explode the ASM jar directly into our jar.
-            // So we take an educated guess based on stuff we care about.
-            Path asmPath = fileSystem.getPath("org", "objectweb", "asm");
-            if (Files.exists(asmPath.resolve("commons").resolve("ClassRemapper.class"))) {
-                return "5.2"; // default with 1.12.2, sufficient for Mixin 0.8
-            } else if (Files.exists(asmPath.resolve("Opcodes.class"))) {
-                return "5.0.3"; // default with 1.8.9, not sufficient for Mixin 0.8
-            } else {
-                return null;
-            }
-        } catch (URISyntaxException | IOException e) {
+    public static String getAsmVersion(JarInspection jar) {
+        try {
+            return jar.get("asmVersion", zip -> {
+                // There is no nice way to get the version while we explode the ASM jar directly into our jar.
+                // So we take an educated guess based on stuff we care about.
+                String asmPath = "org/objectweb/asm/";
+                if (zip.getEntry(asmPath + "commons/ClassRemapper.class") != null) {
+                    return "5.2"; // default with 1.12.2, sufficient for Mixin 0.8
+                } else if (zip.getEntry(asmPath + "Opcodes.class") != null) {
+                    return "5.0.3"; // default with 1.8.9, not sufficient for Mixin 0.8
+                } else {
+                    return null;
+                }
+            });
+        } catch (IOException e) {
             LOGGER.warn("Failed to determine version of bundled asm:", e);
         }
         return null;